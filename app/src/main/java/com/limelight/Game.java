@@ -3,9 +3,12 @@ package com.limelight;
 import com.limelight.binding.PlatformBinding;
 import com.limelight.binding.audio.AndroidAudioRenderer;
 import com.limelight.binding.audio.AudioDiagnostics;
+import com.limelight.binding.audio.AvSyncMonitor;
 import com.limelight.binding.audio.MicrophoneManager;
 import com.limelight.binding.input.ControllerHandler;
 import com.limelight.binding.input.GameInputDevice;
+import com.limelight.binding.input.InputCoalescer;
+import com.limelight.binding.input.InputLatencyTracer;
 import com.limelight.binding.input.KeyboardTranslator;
 import com.limelight.binding.input.advance_setting.ControllerManager;
 import com.limelight.binding.input.advance_setting.TouchController;
@@ -24,6 +27,7 @@ import com.limelight.binding.video.MediaCodecDecoderRenderer;
 import com.limelight.binding.video.MediaCodecHelper;
 import com.limelight.binding.video.PerfOverlayListener;
 import com.limelight.binding.video.PerformanceInfo;
+import com.limelight.nvstream.AdaptiveBitrateController;
 import com.limelight.nvstream.NvConnection;
 import com.limelight.nvstream.NvConnectionListener;
 import com.limelight.nvstream.StreamConfiguration;
@@ -32,6 +36,7 @@ import com.limelight.nvstream.http.NvApp;
 import com.limelight.nvstream.http.NvHTTP;
 import com.limelight.nvstream.input.KeyboardPacket;
 import com.limelight.nvstream.input.MouseButtonPacket;
+import com.limelight.nvstream.input.TouchFrame;
 import com.limelight.nvstream.jni.MoonBridge;
 import com.limelight.preferences.GlPreferences;
 import com.limelight.preferences.PreferenceConfiguration;
@@ -210,6 +215,7 @@ public class Game extends Activity implements SurfaceHolder.Callback,
 
     // 性能覆盖层管理器
     private PerformanceOverlayManager performanceOverlayManager;
+    private volatile AdaptiveBitrateController adaptiveBitrateController;
 
     private MediaCodecDecoderRenderer decoderRenderer;
     private boolean reportedCrash;
@@ -217,6 +223,16 @@ public class Game extends Activity implements SurfaceHolder.Callback,
     private WifiManager.WifiLock highPerfWifiLock;
     private WifiManager.WifiLock lowLatencyWifiLock;
     private Map<Integer, NativeTouchContext.Pointer> nativeTouchPointerMap = new HashMap<>();
+
+    // Refilled for every touch and pen event, so sending them doesn't allocate
+    private final TouchFrame touchFrame = new TouchFrame();
+
+    // Which of the samples batched into each pointer event get sent to the host
+    private InputCoalescer touchCoalescer;
+    private InputCoalescer penCoalescer;
+    private InputCoalescer mouseCoalescer;
+    private InputCoalescer trackpadCoalescer;
+
     private String currentHostAddress; // 保存当前连接的IP
     private boolean shouldResumeSession = false;
 
@@ -586,6 +602,7 @@ public class Game extends Activity implements SurfaceHolder.Callback,
         StreamConfigResult streamConfigResult = buildStreamConfiguration(
                 host, port, httpsPort, uniqueId, pairName, pcUseVdd, serverCert, displayName);
         StreamConfiguration config = streamConfigResult.config;
+        createInputCoalescers(streamConfigResult.displayRefreshRate);
 
         // Initialize the connection
         conn = new NvConnection(getApplicationContext(),
@@ -954,6 +971,7 @@ public class Game extends Activity implements SurfaceHolder.Callback,
         StreamConfigResult streamConfigResult = buildStreamConfiguration(
                 host, port, httpsPort, uniqueId, pairName, pcUseVdd, serverCert, displayName);
         StreamConfiguration config = streamConfigResult.config;
+        createInputCoalescers(streamConfigResult.displayRefreshRate);
 
         // Initialize the connection
         conn = new NvConnection(getApplicationContext(),
@@ -1804,6 +1822,18 @@ public class Game extends Activity implements SurfaceHolder.Callback,
                     }
                 }
 
+                // Add per-frame latency percentiles for the session
+                if (prefConfig.enablePerfOverlay) {
+                    String frameLatencyStats = decoderRenderer.getFrameLatencyStats();
+                    if (frameLatencyStats != null) {
+                        if (message != null) {
+                            message += "\n" + frameLatencyStats;
+                        } else {
+                            message = frameLatencyStats;
+                        }
+                    }
+                }
+
                 if (message != null) {
                     Toast.makeText(this, message, Toast.LENGTH_LONG).show();
                 }
@@ -2001,7 +2031,11 @@ public class Game extends Activity implements SurfaceHolder.Callback,
 
     @Override
     public boolean onKeyDown(int keyCode, KeyEvent event) {
-        return handleKeyDown(event) || super.onKeyDown(keyCode, event);
+        if (handleKeyDown(event)) {
+            InputLatencyTracer.recordEvent(event);
+            return true;
+        }
+        return super.onKeyDown(keyCode, event);
     }
 
     @Override
@@ -2103,7 +2137,11 @@ public class Game extends Activity implements SurfaceHolder.Callback,
 
     @Override
     public boolean onKeyUp(int keyCode, KeyEvent event) {
-        return handleKeyUp(event) || super.onKeyUp(keyCode, event);
+        if (handleKeyUp(event)) {
+            InputLatencyTracer.recordEvent(event);
+            return true;
+        }
+        return super.onKeyUp(keyCode, event);
     }
 
     @Override
@@ -2377,23 +2415,24 @@ public class Game extends Activity implements SurfaceHolder.Callback,
     /**
      * getStreamViewRelativeNormalizedXY
      * 正确地处理了视图的平移(Pan)和缩放(Zoom)。
+     * 结果写入 xOut[outIndex] 和 yOut[outIndex]。
      */
-    private float[] getStreamViewRelativeNormalizedXY(View view, MotionEvent event, int pointerIndex) {
+    private void getStreamViewRelativeNormalizedXY(View view, float rawX, float rawY,
+                                                   float[] xOut, float[] yOut, int outIndex) {
+        xOut[outIndex] = 0.0f;
+        yOut[outIndex] = 0.0f;
+
         StreamView activeStreamView = getActiveStreamView();
         if (activeStreamView == null) {
-            return new float[]{0.0f, 0.0f};
+            return;
         }
 
-        // --- 第一步：获取原始屏幕坐标 ---
-        float rawX = event.getX(pointerIndex);
-        float rawY = event.getY(pointerIndex);
-
         // --- 第二步：进行正确的坐标逆变换（同时处理平移和缩放）---
         float scaleX = activeStreamView.getScaleX();
         float scaleY = activeStreamView.getScaleY();
 
         if (scaleX == 0 || scaleY == 0) {
-            return new float[]{0.0f, 0.0f};
+            return;
         }
 
         // 计算出在游戏画面中的【绝对像素坐标】
@@ -2405,7 +2444,7 @@ public class Game extends Activity implements SurfaceHolder.Callback,
         int streamHeight = activeStreamView.getHeight();
 
         if (streamWidth == 0 || streamHeight == 0) {
-            return new float[]{0.0f, 0.0f};
+            return;
         }
 
         float normalizedX = absoluteX / streamWidth;
@@ -2415,15 +2454,15 @@ public class Game extends Activity implements SurfaceHolder.Callback,
         normalizedX = Math.max(0.0f, Math.min(1.0f, normalizedX));
         normalizedY = Math.max(0.0f, Math.min(1.0f, normalizedY));
 
-
-        return new float[]{normalizedX, normalizedY};
+        xOut[outIndex] = normalizedX;
+        yOut[outIndex] = normalizedY;
     }
 
     private static float normalizeValueInRange(float value, InputDevice.MotionRange range) {
         return (value - range.getMin()) / range.getRange();
     }
 
-    private static float getPressureOrDistance(MotionEvent event, int pointerIndex) {
+    private static float getPressureOrDistance(MotionEvent event, int pointerIndex, int sample) {
         InputDevice dev = event.getDevice();
         switch (event.getActionMasked()) {
             case MotionEvent.ACTION_HOVER_ENTER:
@@ -2433,14 +2472,14 @@ public class Game extends Activity implements SurfaceHolder.Callback,
                 if (dev != null) {
                     InputDevice.MotionRange distanceRange = dev.getMotionRange(MotionEvent.AXIS_DISTANCE, event.getSource());
                     if (distanceRange != null) {
-                        return normalizeValueInRange(event.getAxisValue(MotionEvent.AXIS_DISTANCE, pointerIndex), distanceRange);
+                        return normalizeValueInRange(InputCoalescer.getAxisValue(event, MotionEvent.AXIS_DISTANCE, pointerIndex, sample), distanceRange);
                     }
                 }
                 return 0.0f;
 
             default:
                 // Other events report pressure
-                return event.getPressure(pointerIndex);
+                return InputCoalescer.getPressure(event, pointerIndex, sample);
         }
     }
 
@@ -2458,15 +2497,17 @@ public class Game extends Activity implements SurfaceHolder.Callback,
         return MoonBridge.LI_ROT_UNKNOWN;
     }
 
-    private static float[] polarToCartesian(float r, float theta) {
-        return new float[]{(float) (r * Math.cos(theta)), (float) (r * Math.sin(theta))};
+    // Normalizes an axis of length r at angle theta to the stream view size, one cartesian
+    // component at a time, and returns its length again
+    private float normalizeContactAxis(float r, double theta) {
+        float x = Math.min(Math.abs((float) (r * Math.cos(theta))), streamView.getWidth()) / streamView.getWidth();
+        float y = Math.min(Math.abs((float) (r * Math.sin(theta))), streamView.getHeight()) / streamView.getHeight();
+        return (float) Math.sqrt(x * x + y * y);
     }
 
-    private static float cartesianToR(float[] point) {
-        return (float) Math.sqrt(Math.pow(point[0], 2) + Math.pow(point[1], 2));
-    }
-
-    private float[] getStreamViewNormalizedContactArea(MotionEvent event, int pointerIndex) {
+    // Writes the normalized contact area to majorOut[outIndex] and minorOut[outIndex]
+    private void getStreamViewNormalizedContactArea(MotionEvent event, int pointerIndex,
+                                                    float[] majorOut, float[] minorOut, int outIndex) {
         float orientation;
 
         // If the orientation is unknown, we'll just assume it's at a 45 degree angle and scale it by
@@ -2494,22 +2535,25 @@ public class Game extends Activity implements SurfaceHolder.Callback,
                 break;
         }
 
-        // The contact area major axis is parallel to the orientation, so we simply convert
-        // polar to cartesian coordinates using the orientation as theta.
-        float[] contactAreaMajorCartesian = polarToCartesian(contactAreaMajor, orientation);
-
-        // The contact area minor axis is perpendicular to the contact area major axis (and thus
+        // The contact area major axis is parallel to the orientation, so we use the
+        // orientation as theta. The minor axis is perpendicular to the major axis (and thus
         // the orientation), so rotate the orientation angle by 90 degrees.
-        float[] contactAreaMinorCartesian = polarToCartesian(contactAreaMinor, (float) (orientation + (Math.PI / 2)));
-
-        // Normalize the contact area to the stream view size
-        contactAreaMajorCartesian[0] = Math.min(Math.abs(contactAreaMajorCartesian[0]), streamView.getWidth()) / streamView.getWidth();
-        contactAreaMinorCartesian[0] = Math.min(Math.abs(contactAreaMinorCartesian[0]), streamView.getWidth()) / streamView.getWidth();
-        contactAreaMajorCartesian[1] = Math.min(Math.abs(contactAreaMajorCartesian[1]), streamView.getHeight()) / streamView.getHeight();
-        contactAreaMinorCartesian[1] = Math.min(Math.abs(contactAreaMinorCartesian[1]), streamView.getHeight()) / streamView.getHeight();
+        majorOut[outIndex] = normalizeContactAxis(contactAreaMajor, orientation);
+        minorOut[outIndex] = normalizeContactAxis(contactAreaMinor, orientation + (Math.PI / 2));
+    }
 
-        // Convert the normalized values back into polar coordinates
-        return new float[]{cartesianToR(contactAreaMajorCartesian), cartesianToR(contactAreaMinorCartesian)};
+    // Appends everything the host needs to know about this pointer at the given sample to the
+    // touch frame. Contact area and rotation change slowly, so they always come from the newest sample.
+    private int addPointerToTouchFrame(View view, MotionEvent event, int pointerIndex,
+                                       InputCoalescer coalescer, int sample) {
+        TouchFrame frame = touchFrame;
+        int i = frame.add(event.getPointerId(pointerIndex));
+        getStreamViewRelativeNormalizedXY(view, coalescer.getX(event, pointerIndex, sample),
+                coalescer.getY(event, pointerIndex, sample), frame.x, frame.y, i); // normalized Coords就是坐标占长或宽的比例，最小0，最大1
+        getStreamViewNormalizedContactArea(event, pointerIndex, frame.contactAreaMajor, frame.contactAreaMinor, i);
+        frame.pressureOrDistance[i] = getPressureOrDistance(event, pointerIndex, sample);
+        frame.rotation[i] = getRotationDegrees(event, pointerIndex);
+        return i;
     }
 
     private boolean sendPenEventForPointer(View view, MotionEvent event, byte eventType, byte toolType, int pointerIndex) {
@@ -2521,21 +2565,27 @@ public class Game extends Activity implements SurfaceHolder.Callback,
             penButtons |= MoonBridge.LI_PEN_BUTTON_SECONDARY;
         }
 
-        byte tiltDegrees = MoonBridge.LI_TILT_UNKNOWN;
         InputDevice dev = event.getDevice();
-        if (dev != null) {
-            if (dev.getMotionRange(MotionEvent.AXIS_TILT, event.getSource()) != null) {
-                tiltDegrees = (byte) Math.toDegrees(event.getAxisValue(MotionEvent.AXIS_TILT, pointerIndex));
+        boolean hasTilt = dev != null && dev.getMotionRange(MotionEvent.AXIS_TILT, event.getSource()) != null;
+
+        TouchFrame frame = touchFrame;
+        for (int sample = penCoalescer.getFirstSample(event); sample <= event.getHistorySize(); sample++) {
+            byte tiltDegrees = MoonBridge.LI_TILT_UNKNOWN;
+            if (hasTilt) {
+                tiltDegrees = (byte) Math.toDegrees(InputCoalescer.getAxisValue(event, MotionEvent.AXIS_TILT, pointerIndex, sample));
             }
-        }
 
-        float[] normalizedCoords = getStreamViewRelativeNormalizedXY(view, event, pointerIndex);
-        float[] normalizedContactArea = getStreamViewNormalizedContactArea(event, pointerIndex);
-        return conn.sendPenEvent(eventType, toolType, penButtons,
-                normalizedCoords[0], normalizedCoords[1],
-                getPressureOrDistance(event, pointerIndex),
-                normalizedContactArea[0], normalizedContactArea[1],
-                getRotationDegrees(event, pointerIndex), tiltDegrees) != MoonBridge.LI_ERR_UNSUPPORTED;
+            frame.clear();
+            int i = addPointerToTouchFrame(view, event, pointerIndex, penCoalescer, sample);
+            if (conn.sendPenEvent(eventType, toolType, penButtons,
+                    frame.x[i], frame.y[i],
+                    frame.pressureOrDistance[i],
+                    frame.contactAreaMajor[i], frame.contactAreaMinor[i],
+                    frame.rotation[i], tiltDegrees) == MoonBridge.LI_ERR_UNSUPPORTED) {
+                return false;
+            }
+        }
+        return true;
     }
 
     private static byte convertToolTypeToStylusToolType(MotionEvent event, int pointerIndex) {
@@ -2627,13 +2677,14 @@ public class Game extends Activity implements SurfaceHolder.Callback,
     }
 
     private boolean sendTouchEventForPointer(View view, MotionEvent event, byte eventType, int pointerIndex) {
-        float[] normalizedCoords = getStreamViewRelativeNormalizedXY(view, event, pointerIndex); // normalized Coords就是坐标占长或宽的比例，最小0，最大1
-        float[] normalizedContactArea = getStreamViewNormalizedContactArea(event, pointerIndex);
-        return conn.sendTouchEvent(eventType, event.getPointerId(pointerIndex),
-                normalizedCoords[0], normalizedCoords[1],
-                getPressureOrDistance(event, pointerIndex),
-                normalizedContactArea[0], normalizedContactArea[1],
-                getRotationDegrees(event, pointerIndex)) != MoonBridge.LI_ERR_UNSUPPORTED;
+        for (int sample = touchCoalescer.getFirstSample(event); sample <= event.getHistorySize(); sample++) {
+            touchFrame.clear();
+            addPointerToTouchFrame(view, event, pointerIndex, touchCoalescer, sample);
+            if (conn.sendTouchFrame(eventType, touchFrame) == MoonBridge.LI_ERR_UNSUPPORTED) {
+                return false;
+            }
+        }
+        return true;
     }
 
     private boolean trySendTouchEvent(View view, MotionEvent event) {
@@ -2643,23 +2694,23 @@ public class Game extends Activity implements SurfaceHolder.Callback,
         }
 
         if (event.getActionMasked() == MotionEvent.ACTION_MOVE) {
-            // Move events may impact all active pointers
-            int pointerCount = event.getPointerCount();
+            // Move events may impact all active pointers, so they all go to the host as one frame
+            int pointerCount = Math.min(event.getPointerCount(), TouchFrame.MAX_POINTERS);
             if (prefConfig.enableEnhancedTouch) {
                 for (int i = 0; i < pointerCount; i++) {
                     NativeTouchContext.Pointer pointer = nativeTouchPointerMap.get(event.getPointerId(i));
                     if (pointer != null) {
                         pointer.updatePointerCoords(event, i); // 更新指针坐标
                     }
-                    if (!sendTouchEventForPointer(view, event, eventType, i)) {
-                        return false;
-                    }
                 }
-            } else {
+            }
+            for (int sample = touchCoalescer.getFirstSample(event); sample <= event.getHistorySize(); sample++) {
+                touchFrame.clear();
                 for (int i = 0; i < pointerCount; i++) {
-                    if (!sendTouchEventForPointer(view, event, eventType, i)) {
-                        return false;
-                    }
+                    addPointerToTouchFrame(view, event, i, touchCoalescer, sample);
+                }
+                if (conn.sendTouchFrame(eventType, touchFrame) == MoonBridge.LI_ERR_UNSUPPORTED) {
+                    return false;
                 }
             }
             return true;
@@ -2736,6 +2787,15 @@ public class Game extends Activity implements SurfaceHolder.Callback,
     // Returns true if the event was consumed
     // NB: View is only present if called from a view callback
     private boolean handleMotionEvent(View view, MotionEvent event) {
+        if (processMotionEvent(view, event)) {
+            // Everything this event caused has been sent by now
+            InputLatencyTracer.recordEvent(event);
+            return true;
+        }
+        return false;
+    }
+
+    private boolean processMotionEvent(View view, MotionEvent event) {
         // Pass through mouse/touch/joystick input if we're not grabbing
         if (!grabbedInput) {
             return false;
@@ -3142,23 +3202,19 @@ public class Game extends Activity implements SurfaceHolder.Callback,
                         }
 
                         // ACTION_MOVE 的处理需要更仔细，因为它有历史事件
-                        // 首先处理历史事件
-                        for (int i = 0; i < event.getHistorySize(); i++) {
+                        // 由合并策略决定处理哪些历史事件，最后一个是当前值
+                        for (int sample = trackpadCoalescer.getFirstSample(event); sample <= event.getHistorySize(); sample++) {
                             for (TouchContext aTouchContextMap : touchContextMap) {
-                                if (aTouchContextMap.getActionIndex() < event.getPointerCount()) {
-                                    float[] histCoords = getNormalizedCoordinates(streamView, event.getHistoricalX(aTouchContextMap.getActionIndex(), i), event.getHistoricalY(aTouchContextMap.getActionIndex(), i));
-                                    aTouchContextMap.touchMoveEvent((int) histCoords[0], (int) histCoords[1], event.getHistoricalEventTime(i));
+                                int pointerIndex = aTouchContextMap.getActionIndex();
+                                if (pointerIndex < event.getPointerCount()) {
+                                    float[] coords = getNormalizedCoordinates(streamView,
+                                            trackpadCoalescer.getX(event, pointerIndex, sample),
+                                            trackpadCoalescer.getY(event, pointerIndex, sample));
+                                    aTouchContextMap.touchMoveEvent((int) coords[0], (int) coords[1],
+                                            InputCoalescer.getEventTime(event, sample));
                                 }
                             }
                         }
-
-                        // Now process the current values
-                        for (TouchContext aTouchContextMap : touchContextMap) {
-                            if (aTouchContextMap.getActionIndex() < event.getPointerCount()) {
-                                float[] currentCoords = getNormalizedCoordinates(streamView, event.getX(aTouchContextMap.getActionIndex()), event.getY(aTouchContextMap.getActionIndex()));
-                                aTouchContextMap.touchMoveEvent((int) currentCoords[0], (int) currentCoords[1], event.getEventTime());
-                            }
-                        }
                         break;
                     case MotionEvent.ACTION_CANCEL:
                         for (TouchContext aTouchContext : touchContextMap) {
@@ -3185,7 +3241,23 @@ public class Game extends Activity implements SurfaceHolder.Callback,
 
     }
 
+    private void createInputCoalescers(float displayRefreshRate) {
+        // Input is delivered once per display frame, so never predict further ahead than that
+        float framePeriodMs = 1000.0f / (displayRefreshRate > 0 ? displayRefreshRate : 60.0f);
+        touchCoalescer = new InputCoalescer(prefConfig.touchCoalescing, framePeriodMs);
+        penCoalescer = new InputCoalescer(prefConfig.penCoalescing, framePeriodMs);
+        mouseCoalescer = new InputCoalescer(prefConfig.mouseCoalescing, framePeriodMs);
+        trackpadCoalescer = new InputCoalescer(prefConfig.trackpadCoalescing, framePeriodMs);
+    }
+
     private void updateMousePosition(View touchedView, MotionEvent event) {
+        for (int sample = mouseCoalescer.getFirstSample(event); sample <= event.getHistorySize(); sample++) {
+            updateMousePosition(touchedView, event,
+                    mouseCoalescer.getX(event, 0, sample), mouseCoalescer.getY(event, 0, sample));
+        }
+    }
+
+    private void updateMousePosition(View touchedView, MotionEvent event, float x, float y) {
         // 获取当前活动的StreamView
         StreamView activeStreamView = getActiveStreamView();
 
@@ -3194,13 +3266,13 @@ public class Game extends Activity implements SurfaceHolder.Callback,
 
         // For our StreamView itself, we can use the coordinates unmodified.
         if (touchedView == activeStreamView) {
-            eventX = event.getX(0);
-            eventY = event.getY(0);
+            eventX = x;
+            eventY = y;
         } else {
             // For the containing background view, we must subtract the origin
             // of the StreamView to get video-relative coordinates.
-            eventX = event.getX(0) - activeStreamView.getX();
-            eventY = event.getY(0) - activeStreamView.getY();
+            eventX = x - activeStreamView.getX();
+            eventY = y - activeStreamView.getY();
         }
 
         if (event.getPointerCount() == 1 && event.getActionIndex() == 0 &&
@@ -3324,6 +3396,8 @@ public class Game extends Activity implements SurfaceHolder.Callback,
                 microphoneManager.stopMicrophoneStream();
             }
 
+            LimeLog.info("Input latency: " + InputLatencyTracer.snapshot().toJson());
+
             // Update GameManager state to indicate we're no longer in game
             UiHelper.notifyStreamEnded(this);
 
@@ -3505,6 +3579,13 @@ public class Game extends Activity implements SurfaceHolder.Callback,
 
     @Override
     public void connectionStarted() {
+        // Only measure input while it's actually going to the host
+        InputLatencyTracer.reset();
+
+        if (prefConfig.adaptiveBitrate) {
+            adaptiveBitrateController = conn.startAdaptiveBitrate();
+        }
+
         runOnUiThread(new Runnable() {
             @Override
             public void run() {
@@ -3842,8 +3923,17 @@ public class Game extends Activity implements SurfaceHolder.Callback,
 
             decoderRenderer.setRenderTarget(holder);
 
-            conn.start(new AndroidAudioRenderer(Game.this, prefConfig.enableAudioFx, prefConfig.enableSpatializer),
-                    decoderRenderer, Game.this);
+            // The skew is always measured for the performance overlay, but only corrected if enabled
+            AvSyncMonitor avSyncMonitor = new AvSyncMonitor(prefConfig.avSync,
+                    prefConfig.avSyncWindowMs, prefConfig.avSyncDisplayLatencyMs);
+            decoderRenderer.setAvSyncMonitor(avSyncMonitor);
+
+            AndroidAudioRenderer audioRenderer = new AndroidAudioRenderer(Game.this, prefConfig.enableAudioFx,
+                    prefConfig.enableSpatializer, prefConfig.audioOutputThread, prefConfig.audioFloatOutput,
+                    prefConfig.audioConversion);
+            audioRenderer.setAvSyncMonitor(avSyncMonitor);
+
+            conn.start(audioRenderer, decoderRenderer, Game.this);
 
             if (streamView != null) {
                 streamView.post(this::syncCursorWithStream);
@@ -4299,6 +4389,11 @@ public class Game extends Activity implements SurfaceHolder.Callback,
 
     @Override
     public void onPerfUpdateV(final PerformanceInfo performanceInfo) {
+        AdaptiveBitrateController abr = adaptiveBitrateController;
+        if (abr != null) {
+            abr.onStatsWindow(performanceInfo.lostFrameRate, performanceInfo.rttInfo);
+        }
+
         if (performanceOverlayManager != null) {
             performanceOverlayManager.updatePerformanceInfo(performanceInfo);
         }
@@ -4335,6 +4430,12 @@ public class Game extends Activity implements SurfaceHolder.Callback,
                 perfAttrs.put("解码时间", String.format("%.2f", performanceInfo.decodeTimeMs));
                 perfAttrs.put("带宽", performanceInfo.bandWidth);
                 perfAttrs.put("渲染延迟", String.format("%.2f", performanceInfo.renderingLatencyMs));
+                if (performanceInfo.decodeLatency != null) {
+                    perfAttrs.put("解码P99", String.format("%.2f", performanceInfo.decodeLatency.p99Ms));
+                }
+                if (performanceInfo.presentLatency != null) {
+                    perfAttrs.put("呈现P99", String.format("%.2f", performanceInfo.presentLatency.p99Ms));
+                }
                 for (PerformanceInfoDisplay performanceInfoDisplay : performanceInfoDisplays) {
                     performanceInfoDisplay.display(perfAttrs);
                 }
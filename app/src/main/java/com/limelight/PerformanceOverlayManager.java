@@ -30,6 +30,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.TimeZone;
 
+import com.limelight.binding.input.InputLatencyTracer;
 import com.limelight.binding.video.PerformanceInfo;
 import com.limelight.preferences.PerfOverlayDisplayItemsPreference;
 import com.limelight.preferences.PreferenceConfiguration;
@@ -97,6 +98,9 @@ public class PerformanceOverlayManager {
     private static final long BATTERY_UPDATE_INTERVAL_MS = 15000; // 15秒更新一次
     private long lastBatteryUpdateTime = 0;
 
+    // 上一个统计周期结束时的输入延迟直方图，用来算出本周期的分布
+    private InputLatencyTracer.Snapshot lastInputLatencySnapshot;
+
     // 串流电量统计
     private int streamStartBatteryLevel = -1; // 串流开始时的电量
     private long streamStartTime = -1; // 串流开始时间
@@ -112,6 +116,8 @@ public class PerformanceOverlayManager {
         NETWORK_LATENCY(R.id.perfNetworkLatency, "network_latency", "networkLatencyView"),
         DECODE_LATENCY(R.id.perfDecodeLatency, "decode_latency", "decodeLatencyView"),
         HOST_LATENCY(R.id.perfHostLatency, "host_latency", "hostLatencyView"),
+        AV_SYNC(R.id.perfAvSync, "av_sync", "avSyncView"),
+        INPUT_LATENCY(R.id.perfInputLatency, "input_latency", "inputLatencyView"),
         BATTERY(R.id.perfBattery, "battery", "perfBatteryView");
 
         final int viewId;
@@ -236,6 +242,8 @@ public class PerformanceOverlayManager {
             case NETWORK_LATENCY: return this::showNetworkLatencyInfo;
             case DECODE_LATENCY: return this::showDecodeLatencyInfo;
             case HOST_LATENCY: return this::showHostLatencyInfo;
+            case AV_SYNC: return this::showAvSyncInfo;
+            case INPUT_LATENCY: return this::showInputLatencyInfo;
             case BATTERY: return this::showBatteryInfo;
             default: return this::showMoonPhaseInfo;
         }
@@ -554,6 +562,12 @@ public class PerformanceOverlayManager {
             case HOST_LATENCY:
                 updateHostLatencyText(itemInfo.view, performanceInfo);
                 break;
+            case AV_SYNC:
+                updateAvSyncText(itemInfo.view, performanceInfo);
+                break;
+            case INPUT_LATENCY:
+                updateInputLatencyText(itemInfo.view);
+                break;
             case BATTERY:
                 updateBatteryText(itemInfo.view);
                 break;
@@ -599,6 +613,11 @@ public class PerformanceOverlayManager {
     private void updateDecodeLatencyText(TextView view, PerformanceInfo performanceInfo) {
         String icon = performanceInfo.decodeTimeMs < 15 ? "⏱️" : "🥵";
         @SuppressLint("DefaultLocale") String latencyValue = String.format("%.2f", performanceInfo.decodeTimeMs);
+        // 附加本窗口的P99，单帧卡顿不会被平均值掩盖
+        if (performanceInfo.decodeLatency != null && performanceInfo.decodeLatency.sampleCount > 0) {
+            @SuppressLint("DefaultLocale") String p99Value = String.format(" (p99 %.1f)", performanceInfo.decodeLatency.p99Ms);
+            latencyValue += p99Value;
+        }
         view.setText(createStyledText(icon, latencyValue, "ms", 0xFFD597E3));
     }
 
@@ -611,6 +630,50 @@ public class PerformanceOverlayManager {
         }
     }
 
+    private void updateAvSyncText(TextView view, PerformanceInfo performanceInfo) {
+        if (Float.isNaN(performanceInfo.avSyncSkewMs)) {
+            view.setText(createStyledText("🎵", "--", "", 0xFFF4B400));
+            return;
+        }
+
+        // 正值表示声音比画面早，括号内是已施加的音频延迟
+        @SuppressLint("DefaultLocale") String skewValue = String.format("%+.0f", performanceInfo.avSyncSkewMs);
+        if (performanceInfo.avSyncAudioDelayMs > 0) {
+            skewValue += " (+" + performanceInfo.avSyncAudioDelayMs + ")";
+        }
+        view.setText(createStyledText("🎵", skewValue, "ms", 0xFFF4B400));
+    }
+
+    private void updateInputLatencyText(TextView view) {
+        InputLatencyTracer.Snapshot current = InputLatencyTracer.snapshot();
+        InputLatencyTracer.Snapshot window = lastInputLatencySnapshot != null ?
+                current.since(lastInputLatencySnapshot) : current;
+        lastInputLatencySnapshot = current;
+
+        // 只显示本周期内事件最多的输入源
+        int busiestSource = -1;
+        long busiestCount = 0;
+        for (int source = 0; source < InputLatencyTracer.SOURCE_COUNT; source++) {
+            long count = window.getCount(source);
+            if (count > busiestCount) {
+                busiestCount = count;
+                busiestSource = source;
+            }
+        }
+
+        if (busiestSource < 0) {
+            view.setText(createStyledText("👆", "--", "", 0xFF64B5F6));
+            return;
+        }
+
+        // 中位数/P99
+        @SuppressLint("DefaultLocale") String latencyValue = String.format("%s %.1f/%.1f",
+                InputLatencyTracer.getSourceName(busiestSource),
+                window.getPercentileMs(busiestSource, 50),
+                window.getPercentileMs(busiestSource, 99));
+        view.setText(createStyledText("👆", latencyValue, "ms", 0xFF64B5F6));
+    }
+
     private void updateBatteryText(TextView view) {
         int batteryLevel = UiHelper.getBatteryLevel(activity);
         String batteryText;
@@ -1336,6 +1399,14 @@ public class PerformanceOverlayManager {
         showPerformanceInfo(R.string.perf_host_latency_title, R.string.perf_host_latency_info);
     }
 
+    private void showAvSyncInfo() {
+        showPerformanceInfo(R.string.perf_av_sync_title, R.string.perf_av_sync_info);
+    }
+
+    private void showInputLatencyInfo() {
+        showPerformanceInfo(R.string.perf_input_latency_title, R.string.perf_input_latency_info);
+    }
+
     private void showInfoDialog(String title, String message) {
         new AlertDialog.Builder(activity, R.style.AppDialogStyle)
                 .setTitle(title)
@@ -3,33 +3,81 @@ package com.limelight.binding.audio;
 import android.content.Context;
 import android.content.Intent;
 import android.media.AudioAttributes;
+import android.media.AudioDeviceInfo;
 import android.media.AudioFormat;
 import android.media.AudioManager;
 import android.media.AudioTrack;
 import android.media.Spatializer;
 import android.media.audiofx.AudioEffect;
 import android.os.Build;
+import android.os.Process;
 
 import com.limelight.LimeLog;
 import com.limelight.nvstream.av.audio.AudioRenderer;
 import com.limelight.nvstream.jni.MoonBridge;
+import com.limelight.utils.DiagnosticsRegistry;
+import com.limelight.utils.StripedCounter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
 
 public class AndroidAudioRenderer implements AudioRenderer {
 
     private final Context context;
     private final boolean enableAudioFx;
     private final boolean enableSpatializer;
+    private final boolean enableOutputThread;
+    private final boolean enableFloatOutput;
+    private final boolean enableConversion;
+
+    // Enough to hold the jitter buffer's maximum latency before it starts dropping packets
+    private static final int RING_BUFFER_MS = 300;
+
+    private static final StripedCounter ringOverflows = DiagnosticsRegistry.counter("audio.ring_overflows");
 
     private AudioTrack track;
-    private Spatializer spatializer;
 
-    public AndroidAudioRenderer(Context context, boolean enableAudioFx, boolean enableSpatializer) {
+    private AudioJitterBuffer jitterBuffer;
+    private int inChannelCount;
+    private int channelCount;
+    private short[] stretchBuffer;
+    private short[] stretchInputBuffer;
+
+    // Sample view of the native decoder's direct buffer, which is the same one for the whole stream
+    private ByteBuffer directAudioBuffer;
+    private ShortBuffer directAudioSamples;
+
+    // Only used when writing to the AudioTrack from our own output thread
+    private PcmRingBuffer ringBuffer;
+    private AvSyncMonitor syncMonitor;
+    private Thread outputThread;
+    private boolean floatOutput;
+
+    // Only used when the decoder's output doesn't match what we play. Everything after
+    // the conversion (the jitter buffer, ring buffer and track) is in the output format.
+    private ChannelMixer channelMixer;
+    private AudioResampler resampler;
+    private short[] mixBuffer;
+    private short[] convertBuffer;
+
+    public AndroidAudioRenderer(Context context, boolean enableAudioFx, boolean enableSpatializer,
+                                boolean enableOutputThread, boolean enableFloatOutput,
+                                boolean enableConversion) {
         this.context = context;
         this.enableAudioFx = enableAudioFx;
         this.enableSpatializer = enableSpatializer;
+        this.enableOutputThread = enableOutputThread;
+        this.enableFloatOutput = enableFloatOutput;
+        this.enableConversion = enableConversion;
+    }
+
+    // Must be called before setup()
+    public void setAvSyncMonitor(AvSyncMonitor syncMonitor) {
+        this.syncMonitor = syncMonitor;
     }
 
-    private AudioTrack createAudioTrack(int channelConfig, int sampleRate, int bufferSize, boolean lowLatency) {
+    private AudioTrack createAudioTrack(int channelConfig, int sampleRate, int encoding, int bufferSize, boolean lowLatency) {
         AudioAttributes.Builder attributesBuilder = new AudioAttributes.Builder()
                 .setUsage(AudioAttributes.USAGE_GAME);
         
@@ -39,7 +87,7 @@ public class AndroidAudioRenderer implements AudioRenderer {
         }
         
         AudioFormat format = new AudioFormat.Builder()
-                .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                .setEncoding(encoding)
                 .setSampleRate(sampleRate)
                 .setChannelMask(channelConfig)
                 .build();
@@ -74,36 +122,168 @@ public class AndroidAudioRenderer implements AudioRenderer {
         }
     }
 
-    @Override
-    public int setup(MoonBridge.AudioConfiguration audioConfiguration, int sampleRate, int samplesPerFrame) {
-        int channelConfig;
-        int bytesPerFrame;
-
-        switch (audioConfiguration.channelCount)
+    private static int getChannelConfig(int channelCount) {
+        switch (channelCount)
         {
             case 2:
-                channelConfig = AudioFormat.CHANNEL_OUT_STEREO;
-                break;
+                return AudioFormat.CHANNEL_OUT_STEREO;
             case 4:
-                channelConfig = AudioFormat.CHANNEL_OUT_QUAD;
-                break;
+                return AudioFormat.CHANNEL_OUT_QUAD;
             case 6:
-                channelConfig = AudioFormat.CHANNEL_OUT_5POINT1;
-                break;
+                return AudioFormat.CHANNEL_OUT_5POINT1;
             case 8:
                 // AudioFormat.CHANNEL_OUT_7POINT1_SURROUND isn't available until Android 6.0,
                 // yet the CHANNEL_OUT_SIDE_LEFT and CHANNEL_OUT_SIDE_RIGHT constants were added
                 // in 5.0, so just hardcode the constant so we can work on Lollipop.
-                channelConfig = 0x000018fc; // AudioFormat.CHANNEL_OUT_7POINT1_SURROUND
-                break;
+                return 0x000018fc; // AudioFormat.CHANNEL_OUT_7POINT1_SURROUND
             default:
-                LimeLog.severe("Decoder returned unhandled channel count");
                 return -1;
         }
+    }
+
+    // Whether the platform spatializer would render this layout for us
+    private boolean canSpatialize(int channelConfig, int sampleRate) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.TIRAMISU || !enableSpatializer) {
+            return false;
+        }
+
+        try {
+            AudioManager audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+            Spatializer spatializer = audioManager.getSpatializer();
+            if (spatializer == null || !spatializer.isAvailable() || !spatializer.isEnabled()) {
+                return false;
+            }
+
+            AudioAttributes attributes = new AudioAttributes.Builder()
+                    .setUsage(AudioAttributes.USAGE_GAME)
+                    .setSpatializationBehavior(AudioAttributes.SPATIALIZATION_BEHAVIOR_AUTO)
+                    .build();
+            AudioFormat format = new AudioFormat.Builder()
+                    .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                    .setSampleRate(sampleRate)
+                    .setChannelMask(channelConfig)
+                    .build();
+            return spatializer.canBeSpatialized(attributes, format);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    // Most channels any connected output can take. Only outputs that can actually carry
+    // surround sound count, so this is 2 for speakers, headphones and Bluetooth. Returns 0
+    // when we can't tell, in which case multichannel audio should be left to the platform.
+    private int getMaxOutputChannelCount() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return 0;
+        }
+
+        AudioManager audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+        int maxChannels = 2;
+        for (AudioDeviceInfo device : audioManager.getDevices(AudioManager.GET_DEVICES_OUTPUTS)) {
+            switch (device.getType()) {
+                case AudioDeviceInfo.TYPE_HDMI:
+                case AudioDeviceInfo.TYPE_HDMI_ARC:
+                case AudioDeviceInfo.TYPE_HDMI_EARC:
+                case AudioDeviceInfo.TYPE_LINE_DIGITAL:
+                case AudioDeviceInfo.TYPE_USB_DEVICE:
+                case AudioDeviceInfo.TYPE_USB_HEADSET:
+                    int[] channelCounts = device.getChannelCounts();
+                    if (channelCounts.length == 0) {
+                        // Supports arbitrary channel counts
+                        return 8;
+                    }
+                    for (int count : channelCounts) {
+                        maxChannels = Math.max(maxChannels, count);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return maxChannels;
+    }
+
+    @Override
+    public int setup(MoonBridge.AudioConfiguration audioConfiguration, int sampleRate, int samplesPerFrame) {
+        int bytesPerFrame;
 
+        inChannelCount = audioConfiguration.channelCount;
+        if (getChannelConfig(inChannelCount) < 0) {
+            LimeLog.severe("Decoder returned unhandled channel count");
+            return -1;
+        }
+
+        // Skip all the probing below if we've already found what works on this route
+        String cacheKey = AudioOutputCache.getRouteKey(context) + " " + inChannelCount + "ch " +
+                sampleRate + "Hz " + samplesPerFrame + " " + enableAudioFx + enableSpatializer +
+                enableOutputThread + enableFloatOutput + enableConversion;
+        AudioOutputCache.Entry cached = AudioOutputCache.get(context, cacheKey);
+
+        // Multichannel and non-native rate tracks can't use the low latency mixer on most
+        // devices, so convert them ourselves when that's what the output would end up doing anyway.
+        int decoderSampleRate = sampleRate;
+        channelCount = inChannelCount;
+        if (cached != null) {
+            channelCount = cached.channelCount;
+            sampleRate = cached.sampleRate;
+        }
+        else if (enableConversion) {
+            if (inChannelCount > 2 && !canSpatialize(getChannelConfig(inChannelCount), sampleRate)) {
+                int maxOutputChannels = getMaxOutputChannelCount();
+                if (maxOutputChannels > 0 && maxOutputChannels < inChannelCount) {
+                    channelCount = maxOutputChannels >= 6 ? 6 : 2;
+                }
+            }
+
+            // Audio effects keep us off the low latency path regardless, so there's nothing to gain
+            int nativeSampleRate = AudioTrack.getNativeOutputSampleRate(AudioManager.STREAM_MUSIC);
+            if (!enableAudioFx && nativeSampleRate > 0 && nativeSampleRate != sampleRate) {
+                sampleRate = nativeSampleRate;
+            }
+        }
+
+        int decoderSamplesPerFrame = samplesPerFrame;
+        if (channelCount != inChannelCount) {
+            channelMixer = new ChannelMixer(inChannelCount, channelCount);
+            LimeLog.info("Mixing " + inChannelCount + " channels down to " + channelCount);
+        }
+        if (sampleRate != decoderSampleRate) {
+            resampler = new AudioResampler(channelCount, decoderSampleRate, sampleRate, decoderSamplesPerFrame);
+            samplesPerFrame = resampler.getMaxOutFrames(decoderSamplesPerFrame);
+            LimeLog.info("Resampling audio from " + decoderSampleRate + " Hz to " + sampleRate + " Hz");
+        }
+        if (channelMixer != null && resampler != null) {
+            mixBuffer = new short[decoderSamplesPerFrame * channelCount];
+        }
+        if (channelMixer != null || resampler != null) {
+            convertBuffer = new short[samplesPerFrame * channelCount];
+        }
+
+        int channelConfig = getChannelConfig(channelCount);
         LimeLog.info("Audio channel config: "+String.format("0x%X", channelConfig));
 
-        bytesPerFrame = audioConfiguration.channelCount * samplesPerFrame * 2;
+        // Room for a packet stretched by the jitter buffer
+        stretchBuffer = new short[(samplesPerFrame + samplesPerFrame / 2) * channelCount];
+        stretchInputBuffer = new short[decoderSamplesPerFrame * inChannelCount];
+
+        // Float output saves the mixer a conversion on devices that mix in float, but it's only
+        // worth trying when the output thread does the conversion off the decoder thread.
+        int[] encodings;
+        if (enableOutputThread && enableFloatOutput) {
+            encodings = new int[] { AudioFormat.ENCODING_PCM_FLOAT, AudioFormat.ENCODING_PCM_16BIT };
+        }
+        else {
+            encodings = new int[] { AudioFormat.ENCODING_PCM_16BIT };
+        }
+
+        if (cached != null) {
+            LimeLog.info("Using cached audio output configuration");
+            if (!tryCreateTrack(channelConfig, sampleRate, cached.encoding, cached.bufferSize, cached.lowLatency)) {
+                // Fall back to trying everything again
+                AudioOutputCache.remove(cacheKey);
+                cached = null;
+            }
+        }
 
         // We're not supposed to request less than the minimum
         // buffer size for our buffer, but it appears that we can
@@ -111,16 +291,21 @@ public class AndroidAudioRenderer implements AudioRenderer {
         // We'll try the small buffer size first and if it fails,
         // use the recommended larger buffer size.
 
-        for (int i = 0; i < 4; i++) {
+        for (int attempt = 0; track == null && attempt < 4 * encodings.length; attempt++) {
+            int i = attempt % 4;
+            int encoding = encodings[attempt / 4];
+            int bytesPerSample = encoding == AudioFormat.ENCODING_PCM_FLOAT ? 4 : 2;
             boolean lowLatency;
             int bufferSize;
 
-            // We will try:
+            // For each encoding, we will try:
             // 1) Small buffer, low latency mode
             // 2) Large buffer, low latency mode
             // 3) Small buffer, standard mode
             // 4) Large buffer, standard mode
 
+            bytesPerFrame = channelCount * samplesPerFrame * bytesPerSample;
+
             switch (i) {
                 case 0:
                 case 1:
@@ -146,7 +331,7 @@ public class AndroidAudioRenderer implements AudioRenderer {
                     // Try the larger buffer size
                     bufferSize = Math.max(AudioTrack.getMinBufferSize(sampleRate,
                             channelConfig,
-                            AudioFormat.ENCODING_PCM_16BIT),
+                            encoding),
                             bytesPerFrame * 2);
 
                     // Round to next frame
@@ -168,22 +353,9 @@ public class AndroidAudioRenderer implements AudioRenderer {
                 continue;
             }
 
-            try {
-                track = createAudioTrack(channelConfig, sampleRate, bufferSize, lowLatency);
-                track.play();
-
-                // Successfully created working AudioTrack. We're done here.
-                LimeLog.info("Audio track configuration: "+bufferSize+" "+lowLatency);
-                break;
-            } catch (Exception e) {
-                // Try to release the AudioTrack if we got far enough
-                e.printStackTrace();
-                try {
-                    if (track != null) {
-                        track.release();
-                        track = null;
-                    }
-                } catch (Exception ignored) {}
+            if (tryCreateTrack(channelConfig, sampleRate, encoding, bufferSize, lowLatency)) {
+                AudioOutputCache.put(cacheKey, new AudioOutputCache.Entry(channelCount, sampleRate,
+                        encoding, bufferSize, lowLatency, canSpatializeTrack()));
             }
         }
 
@@ -192,53 +364,221 @@ public class AndroidAudioRenderer implements AudioRenderer {
             return -2;
         }
 
-        // Initialize Spatializer if supported and enabled
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU && enableSpatializer) {
+        if (enableOutputThread) {
+            ringBuffer = new PcmRingBuffer(sampleRate * RING_BUFFER_MS / 1000 * channelCount);
+            outputThread = createOutputThread(samplesPerFrame * channelCount);
+            outputThread.start();
+        }
+
+        if (cached != null && enableSpatializer) {
+            LimeLog.info("Track can be spatialized: " + cached.spatialized);
+        }
+
+        return 0;
+    }
+
+    private boolean tryCreateTrack(int channelConfig, int sampleRate, int encoding, int bufferSize, boolean lowLatency) {
+        int bytesPerSample = encoding == AudioFormat.ENCODING_PCM_FLOAT ? 4 : 2;
+        try {
+            track = createAudioTrack(channelConfig, sampleRate, encoding, bufferSize, lowLatency);
+            track.play();
+
+            // Successfully created working AudioTrack. We're done here.
+            LimeLog.info("Audio track configuration: "+bufferSize+" "+lowLatency+" "+(bytesPerSample * 8)+"-bit");
+
+            int bufferMs = (int) (((long) bufferSize / (channelCount * bytesPerSample)) * 1000 / sampleRate);
+            // Without the output thread, extra latency just backs up into the decoder's queue
+            // which drops packets once it gets too deep
+            jitterBuffer = new AudioJitterBuffer(track, sampleRate, bufferMs,
+                    enableOutputThread ? RING_BUFFER_MS * 2 / 3 : 0, syncMonitor);
+            floatOutput = encoding == AudioFormat.ENCODING_PCM_FLOAT;
+            return true;
+        } catch (Exception e) {
+            // Try to release the AudioTrack if we got far enough
+            e.printStackTrace();
             try {
-                AudioManager audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
-                spatializer = audioManager.getSpatializer();
-                
-                if (spatializer != null && spatializer.isAvailable()) {
-                    // Check if the track can be spatialized
-                    AudioAttributes attributes = track.getAudioAttributes();
-                    AudioFormat trackFormat = track.getFormat();
-                    
-                    if (spatializer.canBeSpatialized(attributes, trackFormat)) {
-                        LimeLog.info("Spatializer is available and track can be spatialized");
-                        LimeLog.info("Spatializer enabled: " + spatializer.isEnabled());
-                        LimeLog.info("Spatializer level: " + spatializer.getImmersiveAudioLevel());
-                    } else {
-                        LimeLog.warning("Spatializer is available but track cannot be spatialized");
-                        spatializer = null;
-                    }
+                if (track != null) {
+                    track.release();
+                }
+            } catch (Exception ignored) {}
+            track = null;
+            return false;
+        }
+    }
+
+    // Checks whether the spatializer will render the track we just created
+    private boolean canSpatializeTrack() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.TIRAMISU || !enableSpatializer) {
+            return false;
+        }
+
+        try {
+            AudioManager audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+            Spatializer spatializer = audioManager.getSpatializer();
+
+            if (spatializer != null && spatializer.isAvailable()) {
+                // Check if the track can be spatialized
+                AudioAttributes attributes = track.getAudioAttributes();
+                AudioFormat trackFormat = track.getFormat();
+
+                if (spatializer.canBeSpatialized(attributes, trackFormat)) {
+                    LimeLog.info("Spatializer is available and track can be spatialized");
+                    LimeLog.info("Spatializer enabled: " + spatializer.isEnabled());
+                    LimeLog.info("Spatializer level: " + spatializer.getImmersiveAudioLevel());
+                    return true;
                 } else {
-                    LimeLog.info("Spatializer is not available on this device");
-                    spatializer = null;
+                    LimeLog.warning("Spatializer is available but track cannot be spatialized");
                 }
-            } catch (Exception e) {
-                LimeLog.warning("Failed to initialize Spatializer: " + e.getMessage());
-                e.printStackTrace();
-                spatializer = null;
+            } else {
+                LimeLog.info("Spatializer is not available on this device");
             }
+        } catch (Exception e) {
+            LimeLog.warning("Failed to initialize Spatializer: " + e.getMessage());
+            e.printStackTrace();
         }
+        return false;
+    }
 
-        return 0;
+    // Converts a packet from the decoder's format into convertBuffer and returns its frame count
+    private int convert(short[] in, int frames) {
+        if (resampler == null) {
+            channelMixer.mix(in, frames, convertBuffer);
+            return frames;
+        }
+
+        short[] pcm = in;
+        if (channelMixer != null) {
+            channelMixer.mix(in, frames, mixBuffer);
+            pcm = mixBuffer;
+        }
+        return resampler.process(pcm, frames, convertBuffer);
     }
 
     @Override
     public void playDecodedAudio(short[] audioData) {
-        // Only queue up to 40 ms of pending audio data in addition to what AudioTrack is buffering for us.
-        if (MoonBridge.getPendingAudioDuration() < 40) {
-            // This will block until the write is completed. That can cause a backlog
-            // of pending audio data, so we do the above check to be able to bound
-            // latency at 40 ms in that situation.
-            track.write(audioData, 0, audioData.length);
+        if (convertBuffer != null) {
+            playPcm(convertBuffer, convert(audioData, audioData.length / inChannelCount));
+        }
+        else {
+            playPcm(audioData, audioData.length / channelCount);
+        }
+    }
+
+    private void playPcm(short[] audioData, int frames) {
+        // The jitter buffer keeps latency bounded by stretching or shrinking packets
+        // slightly, and only drops them if we've fallen far behind.
+        int outFrames = jitterBuffer.onPacket(frames);
+        if (outFrames == 0) {
+            return;
+        }
+
+        short[] pcm = audioData;
+        if (outFrames != frames) {
+            AudioJitterBuffer.stretch(audioData, frames, stretchBuffer, outFrames, channelCount);
+            pcm = stretchBuffer;
+        }
+
+        if (ringBuffer != null) {
+            // The output thread takes it from here, so we never block the decoder
+            if (!ringBuffer.write(pcm, 0, outFrames * channelCount)) {
+                ringOverflows.increment();
+                jitterBuffer.onFramesDiscarded(outFrames);
+            }
         }
         else {
-            LimeLog.info("Too much pending audio data: " + MoonBridge.getPendingAudioDuration() +" ms");
+            // This will block until the write is completed
+            track.write(pcm, 0, outFrames * channelCount);
         }
     }
 
+    @Override
+    public void playDecodedAudio(ByteBuffer audioData, int sampleCount) {
+        if (audioData != directAudioBuffer) {
+            directAudioBuffer = audioData;
+            directAudioSamples = audioData.order(ByteOrder.nativeOrder()).asShortBuffer();
+        }
+
+        if (convertBuffer != null) {
+            directAudioSamples.clear();
+            directAudioSamples.get(stretchInputBuffer, 0, sampleCount);
+            playPcm(convertBuffer, convert(stretchInputBuffer, sampleCount / inChannelCount));
+            return;
+        }
+
+        int frames = sampleCount / channelCount;
+        int outFrames = jitterBuffer.onPacket(frames);
+        if (outFrames == 0) {
+            return;
+        }
+
+        directAudioSamples.clear();
+        if (outFrames != frames) {
+            AudioJitterBuffer.stretch(directAudioSamples, frames, stretchInputBuffer, stretchBuffer, outFrames, channelCount);
+            if (ringBuffer != null) {
+                if (!ringBuffer.write(stretchBuffer, 0, outFrames * channelCount)) {
+                    ringOverflows.increment();
+                    jitterBuffer.onFramesDiscarded(outFrames);
+                }
+            }
+            else {
+                track.write(stretchBuffer, 0, outFrames * channelCount);
+            }
+        }
+        else if (ringBuffer != null) {
+            // The output thread takes it from here, so we never block the decoder
+            if (!ringBuffer.write(directAudioSamples, sampleCount)) {
+                ringOverflows.increment();
+                jitterBuffer.onFramesDiscarded(outFrames);
+            }
+        }
+        else {
+            // Straight from the decoder's memory into the AudioTrack, with no Java array in between.
+            // This will block until the write is completed.
+            audioData.clear();
+            track.write(audioData, sampleCount * 2, AudioTrack.WRITE_BLOCKING);
+        }
+    }
+
+    private Thread createOutputThread(final int chunkSamples) {
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+
+                short[] chunk = new short[chunkSamples];
+                float[] floatChunk = floatOutput ? new float[chunkSamples] : null;
+
+                while (!isInterrupted()) {
+                    if (!ringBuffer.awaitData(System.nanoTime() + 100000000)) {
+                        continue;
+                    }
+
+                    int samples = ringBuffer.read(chunk, 0, chunk.length);
+
+                    // Blocking here paces us to the AudioTrack's consumption without
+                    // holding up the decoder, which only ever touches the ring buffer.
+                    int ret;
+                    if (floatChunk != null) {
+                        for (int i = 0; i < samples; i++) {
+                            floatChunk[i] = chunk[i] * (1.0f / 32768.0f);
+                        }
+                        ret = track.write(floatChunk, 0, samples, AudioTrack.WRITE_BLOCKING);
+                    }
+                    else {
+                        ret = track.write(chunk, 0, samples);
+                    }
+
+                    if (ret < 0) {
+                        LimeLog.warning("Audio track write failed: " + ret);
+                        break;
+                    }
+                }
+            }
+        };
+        t.setName("Audio - Output");
+        return t;
+    }
+
     @Override
     public void start() {
         if (enableAudioFx) {
@@ -264,6 +604,25 @@ public class AndroidAudioRenderer implements AudioRenderer {
 
     @Override
     public void cleanup() {
+        if (outputThread != null) {
+            // Unblock any pending write by discarding what's queued, then wait for
+            // the thread to exit before we release the track out from under it
+            outputThread.interrupt();
+            track.pause();
+            track.flush();
+            try {
+                outputThread.join();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+
+                // InterruptedException clears the thread's interrupt status. Since we can't
+                // handle that here, we will re-interrupt the thread to set the interrupt
+                // status back to true.
+                Thread.currentThread().interrupt();
+            }
+            outputThread = null;
+        }
+
         // Immediately drop all pending data
         track.pause();
         track.flush();
@@ -3,94 +3,99 @@ package com.limelight.binding.audio;
 import android.content.Context;
 import com.limelight.LimeLog;
 import com.limelight.R;
-
-import java.util.concurrent.atomic.AtomicLong;
+import com.limelight.utils.DiagnosticsRegistry;
+import com.limelight.utils.StripedCounter;
 
 /**
  * 音频诊断工具类
  * 用于监控和分析音频流的连续性
+ *
+ * 计数器注册在 {@link DiagnosticsRegistry} 中，记录方法只做计数，
+ * 统计报告由注册表的后台线程定期输出。
  */
 public class AudioDiagnostics {
     
-    private static final AtomicLong totalFramesCaptured = new AtomicLong(0);
-    private static final AtomicLong totalFramesEncoded = new AtomicLong(0);
-    private static final AtomicLong totalFramesSent = new AtomicLong(0);
-    private static final AtomicLong droppedFrames = new AtomicLong(0);
-    private static final AtomicLong encodingErrors = new AtomicLong(0);
-    private static final AtomicLong sendingErrors = new AtomicLong(0);
+    private static final StripedCounter totalFramesCaptured = DiagnosticsRegistry.counter("mic.frames_captured");
+    private static final StripedCounter totalFramesEncoded = DiagnosticsRegistry.counter("mic.frames_encoded");
+    private static final StripedCounter totalFramesSent = DiagnosticsRegistry.counter("mic.frames_sent");
+    private static final StripedCounter droppedFrames = DiagnosticsRegistry.counter("mic.frames_dropped");
+    private static final StripedCounter encodingErrors = DiagnosticsRegistry.counter("mic.encoding_errors");
+    private static final StripedCounter sendingErrors = DiagnosticsRegistry.counter("mic.sending_errors");
+    private static final StripedCounter lateSends = DiagnosticsRegistry.counter("mic.late_sends");
+    
+    // 上次报告时的捕获帧数，没有新数据时不重复报告（只在诊断线程上访问）
+    private static long lastReportedCaptured = -1;
     
-    private static long lastReportTime = 0;
-    private static final long REPORT_INTERVAL_MS = 5000; // 每5秒报告一次
+    static {
+        DiagnosticsRegistry.addReporter(snapshot -> {
+            long captured = snapshot.get(totalFramesCaptured.getName());
+            if (captured != lastReportedCaptured && captured > 0) {
+                lastReportedCaptured = captured;
+                reportStatistics();
+            }
+        });
+    }
     
     /**
      * 记录捕获的帧
      */
     public static void recordFrameCaptured() {
-        totalFramesCaptured.incrementAndGet();
-        checkAndReport();
+        totalFramesCaptured.increment();
     }
     
     /**
      * 记录编码的帧
      */
     public static void recordFrameEncoded() {
-        totalFramesEncoded.incrementAndGet();
-        checkAndReport();
+        totalFramesEncoded.increment();
     }
     
     /**
      * 记录发送的帧
      */
     public static void recordFrameSent() {
-        totalFramesSent.incrementAndGet();
-        checkAndReport();
+        totalFramesSent.increment();
     }
     
     /**
      * 记录丢弃的帧
      */
     public static void recordFrameDropped() {
-        droppedFrames.incrementAndGet();
-        checkAndReport();
+        droppedFrames.increment();
     }
     
     /**
      * 记录编码错误
      */
     public static void recordEncodingError() {
-        encodingErrors.incrementAndGet();
-        checkAndReport();
+        encodingErrors.increment();
     }
     
     /**
      * 记录发送错误
      */
     public static void recordSendingError() {
-        sendingErrors.incrementAndGet();
-        checkAndReport();
+        sendingErrors.increment();
     }
     
     /**
-     * 检查并报告统计信息
+     * 记录发送间隔超过两个帧长的情况
      */
-    private static void checkAndReport() {
-        long currentTime = System.currentTimeMillis();
-        if (currentTime - lastReportTime >= REPORT_INTERVAL_MS) {
-            reportStatistics();
-            lastReportTime = currentTime;
-        }
+    public static void recordLateSend() {
+        lateSends.increment();
     }
     
     /**
      * 报告统计信息
      */
     public static void reportStatistics() {
-        long captured = totalFramesCaptured.get();
-        long encoded = totalFramesEncoded.get();
-        long sent = totalFramesSent.get();
-        long dropped = droppedFrames.get();
-        long encErrors = encodingErrors.get();
-        long sendErrors = sendingErrors.get();
+        long captured = totalFramesCaptured.sum();
+        long encoded = totalFramesEncoded.sum();
+        long sent = totalFramesSent.sum();
+        long dropped = droppedFrames.sum();
+        long encErrors = encodingErrors.sum();
+        long sendErrors = sendingErrors.sum();
+        long late = lateSends.sum();
         
         // 计算连续性指标
         double captureToEncodeRatio = captured > 0 ? (double) encoded / captured : 0;
@@ -104,6 +109,7 @@ public class AudioDiagnostics {
         LimeLog.info("丢弃帧数: " + dropped);
         LimeLog.info("编码错误: " + encErrors);
         LimeLog.info("发送错误: " + sendErrors);
+        LimeLog.info("发送延迟次数: " + late);
         LimeLog.info("捕获到编码比例: " + String.format("%.2f%%", captureToEncodeRatio * 100));
         LimeLog.info("编码到发送比例: " + String.format("%.2f%%", encodeToSendRatio * 100));
         LimeLog.info("整体连续性: " + String.format("%.2f%%", overallContinuity * 100));
@@ -127,13 +133,13 @@ public class AudioDiagnostics {
      * 重置统计信息
      */
     public static void resetStatistics() {
-        totalFramesCaptured.set(0);
-        totalFramesEncoded.set(0);
-        totalFramesSent.set(0);
-        droppedFrames.set(0);
-        encodingErrors.set(0);
-        sendingErrors.set(0);
-        lastReportTime = 0;
+        totalFramesCaptured.reset();
+        totalFramesEncoded.reset();
+        totalFramesSent.reset();
+        droppedFrames.reset();
+        encodingErrors.reset();
+        sendingErrors.reset();
+        lateSends.reset();
         LimeLog.info("音频诊断统计已重置");
     }
     
@@ -141,10 +147,10 @@ public class AudioDiagnostics {
      * 获取当前统计信息
      */
     public static String getCurrentStats() {
-        long captured = totalFramesCaptured.get();
-        long encoded = totalFramesEncoded.get();
-        long sent = totalFramesSent.get();
-        long dropped = droppedFrames.get();
+        long captured = totalFramesCaptured.sum();
+        long encoded = totalFramesEncoded.sum();
+        long sent = totalFramesSent.sum();
+        long dropped = droppedFrames.sum();
         
         double continuity = captured > 0 ? (double) sent / captured : 0;
         
@@ -160,10 +166,10 @@ public class AudioDiagnostics {
             return getCurrentStats();
         }
         
-        long captured = totalFramesCaptured.get();
-        long encoded = totalFramesEncoded.get();
-        long sent = totalFramesSent.get();
-        long dropped = droppedFrames.get();
+        long captured = totalFramesCaptured.sum();
+        long encoded = totalFramesEncoded.sum();
+        long sent = totalFramesSent.sum();
+        long dropped = droppedFrames.sum();
         
         double continuity = captured > 0 ? (double) sent / captured : 0;
         
@@ -0,0 +1,277 @@
+package com.limelight.binding.audio;
+
+import android.media.AudioTimestamp;
+import android.media.AudioTrack;
+import android.os.Build;
+
+import com.limelight.nvstream.jni.MoonBridge;
+import com.limelight.utils.DiagnosticsRegistry;
+import com.limelight.utils.StripedCounter;
+
+import java.nio.ShortBuffer;
+
+// Keeps audio latency close to an adaptive target by stretching or shrinking packets by a few
+// sample frames, instead of dropping whole packets once too much audio is queued.
+//
+// Latency is what's queued in the AudioTrack (measured with AudioTrack.getTimestamp()) plus what's
+// still waiting to be decoded. The target grows when latency gets noisy or the track underruns,
+// and slowly shrinks back while playback is stable. The host and the audio sink run on different
+// clocks, so we also estimate the drift between them and correct for it continuously, leaving
+// the latency feedback to handle only what the drift estimate misses.
+//
+// An AvSyncMonitor, if present, can raise the target further to hold audio back for lip-sync.
+//
+// Owned by the thread that delivers decoded audio, which calls onPacket() and
+// onFramesDiscarded(). That thread only writes to the AudioTrack itself when there's no output
+// thread; with one, the output thread does the writing and never touches this class. The only
+// inputs from other threads are track.getTimestamp() and getUnderrunCount(), which AudioTrack
+// allows from any thread, and the sync monitor's volatile delay.
+class AudioJitterBuffer {
+    private static final int MIN_TARGET_MS = 10;
+    private static final int MAX_TARGET_MS = 150;
+
+    // Latency within this much of the target is left alone
+    static final int DEAD_BAND_MS = 3;
+
+    // Beyond this much over the target we fall back to dropping packets, since
+    // stretching would take too long to bring latency back down.
+    //
+    // We used to drop whenever more than 40 ms was waiting to be decoded, however full the
+    // AudioTrack was. That was only safe because nothing else bounded latency. Now the whole
+    // queue (track plus decoder) is held at the target by stretching, so dropping is only a
+    // fallback for stalls and can be measured from the target rather than from zero. Stretching
+    // is slow (see below), so keep the margin close to the old bound.
+    private static final int DROP_THRESHOLD_MS = 40;
+
+    // Latency errors are corrected over roughly this many packets
+    private static final int SETTLE_PACKETS = 200;
+
+    // Never change a packet's length by more than 0.5% (under a tenth of a semitone), so even
+    // sustained tones don't audibly shift in pitch. That still corrects 5 ms of latency per
+    // second, several times the worst clock drift we accept below.
+    static final int MAX_STRETCH_DIVISOR = 200;
+
+    private static final int UNDERRUN_PENALTY_MS = 5;
+    private static final long TARGET_DECAY_INTERVAL_NS = 10000000000L;
+    private static final long TIMESTAMP_INTERVAL_NS = 50000000;
+    private static final long DRIFT_WINDOW_NS = 2000000000L;
+
+    // Sane bounds on clock drift between the host and the audio sink (0.1%)
+    private static final double MAX_DRIFT = 0.001;
+
+    private static final StripedCounter packetsPlayed = DiagnosticsRegistry.counter("audio.packets_played");
+    private static final StripedCounter packetsStretched = DiagnosticsRegistry.counter("audio.packets_stretched");
+    private static final StripedCounter packetsDropped = DiagnosticsRegistry.counter("audio.packets_dropped");
+
+    private final AudioTrack track;
+    private final int sampleRate;
+    private final int minTargetMs;
+    private final int maxLatencyMs;
+    private final AvSyncMonitor syncMonitor;
+
+    private final AudioTimestamp timestamp = new AudioTimestamp();
+    private long timestampFramePosition;
+    private long timestampNanoTime;
+    private long lastTimestampQueryNs;
+
+    private long framesWritten;
+
+    // Latency, in fractional milliseconds
+    private double smoothedLatencyMs = -1;
+    private double latencyJitterMs;
+    private int underrunPenaltyMs;
+    private int lastUnderrunCount;
+    private long lastTargetDecayNs;
+
+    // Drift is the ratio of host to sink sample clocks, minus 1
+    private double drift;
+    private long driftWindowStartNs;
+    private long driftWindowArrivedFrames;
+    private long driftWindowStartPosition;
+    private long driftWindowStartPositionNs;
+
+    // Frames we still owe the output (negative) or should take away from it (positive)
+    private double pendingCorrectionFrames;
+
+    // maxLatencyMs is how much audio can be queued without blocking the decoder for long, which
+    // bounds how far the sync monitor can push the target.
+    AudioJitterBuffer(AudioTrack track, int sampleRate, int trackBufferMs, int maxLatencyMs, AvSyncMonitor syncMonitor) {
+        this.track = track;
+        this.sampleRate = sampleRate;
+        this.syncMonitor = syncMonitor;
+
+        // Running the track much emptier than its buffer size would just underrun it
+        this.minTargetMs = Math.min(MAX_TARGET_MS, Math.max(MIN_TARGET_MS, trackBufferMs / 2));
+        this.maxLatencyMs = Math.max(MAX_TARGET_MS, maxLatencyMs);
+    }
+
+    private void updateTimestamp(long nowNs) {
+        if (nowNs - lastTimestampQueryNs < TIMESTAMP_INTERVAL_NS && timestampNanoTime != 0) {
+            return;
+        }
+        lastTimestampQueryNs = nowNs;
+
+        if (track.getTimestamp(timestamp)) {
+            timestampFramePosition = timestamp.framePosition;
+            timestampNanoTime = timestamp.nanoTime;
+        } else {
+            // No timestamp yet (common right after starting), so fall back to the playback head.
+            // This is unsigned and wraps, but won't at our sample rates within a session.
+            timestampFramePosition = track.getPlaybackHeadPosition() & 0xFFFFFFFFL;
+            timestampNanoTime = nowNs;
+        }
+    }
+
+    private long getPlayedFrames(long nowNs) {
+        // Extrapolate from the last timestamp
+        long played = timestampFramePosition + (nowNs - timestampNanoTime) * sampleRate / 1000000000L;
+        return Math.min(played, framesWritten);
+    }
+
+    private int getTargetMs() {
+        int target = Math.min(MAX_TARGET_MS, minTargetMs + (int) (2 * latencyJitterMs) + underrunPenaltyMs);
+        if (syncMonitor != null) {
+            target = Math.min(maxLatencyMs, target + syncMonitor.getAudioDelayMs());
+        }
+        return target;
+    }
+
+    private void updateTarget(long nowNs) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            int underruns = track.getUnderrunCount();
+            if (underruns > lastUnderrunCount) {
+                underrunPenaltyMs = Math.min(underrunPenaltyMs + UNDERRUN_PENALTY_MS, MAX_TARGET_MS);
+                lastUnderrunCount = underruns;
+                lastTargetDecayNs = nowNs;
+                return;
+            }
+        }
+
+        if (nowNs - lastTargetDecayNs >= TARGET_DECAY_INTERVAL_NS) {
+            // Stable for a while, so try a little less buffering
+            if (underrunPenaltyMs > 0) {
+                underrunPenaltyMs--;
+            }
+            lastTargetDecayNs = nowNs;
+        }
+    }
+
+    private void updateDrift(long nowNs, int arrivedFrames) {
+        if (driftWindowStartNs == 0) {
+            driftWindowStartNs = nowNs;
+            driftWindowStartPosition = timestampFramePosition;
+            driftWindowStartPositionNs = timestampNanoTime;
+            driftWindowArrivedFrames = 0;
+            return;
+        }
+
+        driftWindowArrivedFrames += arrivedFrames;
+        if (nowNs - driftWindowStartNs < DRIFT_WINDOW_NS || timestampNanoTime == driftWindowStartPositionNs) {
+            return;
+        }
+
+        double arrivalRate = driftWindowArrivedFrames * 1e9 / (nowNs - driftWindowStartNs);
+        double playbackRate = (timestampFramePosition - driftWindowStartPosition) * 1e9 /
+                (timestampNanoTime - driftWindowStartPositionNs);
+
+        // Windows with starvation or dropped packets say nothing about the clocks
+        if (playbackRate > 0 && Math.abs(arrivalRate - playbackRate) < sampleRate * MAX_DRIFT * 4) {
+            double windowDrift = Math.max(-MAX_DRIFT, Math.min(MAX_DRIFT, arrivalRate / playbackRate - 1));
+            drift += (windowDrift - drift) / 8;
+        }
+
+        driftWindowStartNs = nowNs;
+        driftWindowStartPosition = timestampFramePosition;
+        driftWindowStartPositionNs = timestampNanoTime;
+        driftWindowArrivedFrames = 0;
+    }
+
+    // Returns the number of frames the given packet should be stretched or shrunk to,
+    // or 0 if it should be dropped. The caller must write that many frames.
+    int onPacket(int frames) {
+        long nowNs = System.nanoTime();
+
+        updateTimestamp(nowNs);
+        updateDrift(nowNs, frames);
+        updateTarget(nowNs);
+
+        double queuedMs = (framesWritten - getPlayedFrames(nowNs)) * 1000.0 / sampleRate;
+        double latencyMs = queuedMs + MoonBridge.getPendingAudioDuration();
+        if (smoothedLatencyMs < 0) {
+            smoothedLatencyMs = latencyMs;
+        }
+        latencyJitterMs += (Math.abs(latencyMs - smoothedLatencyMs) - latencyJitterMs) / 32;
+        smoothedLatencyMs += (latencyMs - smoothedLatencyMs) / 16;
+        int targetMs = getTargetMs();
+        if (syncMonitor != null) {
+            syncMonitor.onAudioLatency(smoothedLatencyMs, targetMs);
+        }
+        if (latencyMs > targetMs + DROP_THRESHOLD_MS) {
+            // Way behind, like after a network stall. Catch up the old way.
+            packetsDropped.increment();
+            smoothedLatencyMs = -1;
+            pendingCorrectionFrames = 0;
+            return 0;
+        }
+
+        // Feed-forward the clock drift, then feed back the latency error
+        pendingCorrectionFrames += drift * frames;
+        double errorMs = smoothedLatencyMs - targetMs;
+        if (Math.abs(errorMs) > DEAD_BAND_MS) {
+            pendingCorrectionFrames += errorMs * sampleRate / 1000 / SETTLE_PACKETS;
+        }
+
+        int maxStretch = Math.max(1, frames / MAX_STRETCH_DIVISOR);
+        int correction = (int) Math.max(-maxStretch, Math.min(maxStretch, pendingCorrectionFrames));
+        pendingCorrectionFrames -= correction;
+
+        // With the cap this low, a large error takes many packets to work off. Don't let the
+        // backlog build up past a packet's worth, or it would keep correcting after latency is
+        // already back on target.
+        pendingCorrectionFrames = Math.max(-frames, Math.min(frames, pendingCorrectionFrames));
+
+        int outFrames = frames - correction;
+        framesWritten += outFrames;
+        packetsPlayed.increment();
+        if (correction != 0) {
+            packetsStretched.increment();
+        }
+        return outFrames;
+    }
+
+    // For frames returned by onPacket() that never made it to the track, like when the ring
+    // buffer in front of it is full. Otherwise they'd count as queued forever.
+    void onFramesDiscarded(int frames) {
+        framesWritten -= frames;
+    }
+
+    // Same as below, but reads the input from a buffer's current position
+    static void stretch(ShortBuffer in, int inFrames, short[] scratch, short[] out, int outFrames, int channels) {
+        in.get(scratch, 0, inFrames * channels);
+        stretch(scratch, inFrames, out, outFrames, channels);
+    }
+
+    // Resamples interleaved PCM with linear interpolation. The first and last frames are kept
+    // as-is so there's no discontinuity with neighbouring packets.
+    static void stretch(short[] in, int inFrames, short[] out, int outFrames, int channels) {
+        if (inFrames <= 1 || outFrames <= 1) {
+            System.arraycopy(in, 0, out, 0, Math.min(inFrames, outFrames) * channels);
+            return;
+        }
+
+        // 16.16 fixed point step through the input
+        long step = ((long) (inFrames - 1) << 16) / (outFrames - 1);
+        long pos = 0;
+        for (int i = 0; i < outFrames - 1; i++, pos += step) {
+            int index = (int) (pos >> 16);
+            long frac = pos & 0xFFFF;
+            int a = index * channels;
+            int b = (index + 1) * channels;
+            int o = i * channels;
+            for (int c = 0; c < channels; c++) {
+                out[o + c] = (short) (in[a + c] + (((in[b + c] - in[a + c]) * frac) >> 16));
+            }
+        }
+        System.arraycopy(in, (inFrames - 1) * channels, out, (outFrames - 1) * channels, channels);
+    }
+}
@@ -0,0 +1,121 @@
+package com.limelight.binding.audio;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioDeviceCallback;
+import android.media.AudioDeviceInfo;
+import android.media.AudioManager;
+import android.os.Build;
+
+import com.limelight.LimeLog;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Remembers which output configuration worked on each audio route, so starting another stream
+// doesn't have to probe the spatializer and connected devices and then try AudioTrack
+// configurations one by one until one works.
+//
+// Entries are keyed by the current route and the stream's format. Everything is dropped when
+// an output device is added or removed, since a device that comes back under the same route
+// key might not accept what it did before (a Bluetooth headset switching codecs, for example).
+final class AudioOutputCache {
+    static final class Entry {
+        final int channelCount;
+        final int sampleRate;
+        final int encoding;
+        final int bufferSize;
+        final boolean lowLatency;
+        final boolean spatialized;
+
+        Entry(int channelCount, int sampleRate, int encoding, int bufferSize, boolean lowLatency, boolean spatialized) {
+            this.channelCount = channelCount;
+            this.sampleRate = sampleRate;
+            this.encoding = encoding;
+            this.bufferSize = bufferSize;
+            this.lowLatency = lowLatency;
+            this.spatialized = spatialized;
+        }
+    }
+
+    private static final Map<String, Entry> entries = new HashMap<>();
+    private static boolean callbackRegistered;
+
+    private AudioOutputCache() {}
+
+    private static synchronized void invalidate(String reason) {
+        if (!entries.isEmpty()) {
+            LimeLog.info("Audio output cache cleared: " + reason);
+            entries.clear();
+        }
+    }
+
+    private static void registerCallback(Context context) {
+        if (callbackRegistered || Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return;
+        }
+
+        AudioManager audioManager = (AudioManager) context.getApplicationContext().getSystemService(Context.AUDIO_SERVICE);
+        audioManager.registerAudioDeviceCallback(new AudioDeviceCallback() {
+            // Registering reports every device that's already connected, which isn't a change
+            private boolean initialDevicesReported;
+
+            @Override
+            public void onAudioDevicesAdded(AudioDeviceInfo[] addedDevices) {
+                if (!initialDevicesReported) {
+                    initialDevicesReported = true;
+                    return;
+                }
+                invalidate("output device added");
+            }
+
+            @Override
+            public void onAudioDevicesRemoved(AudioDeviceInfo[] removedDevices) {
+                invalidate("output device removed");
+            }
+        }, null);
+        callbackRegistered = true;
+    }
+
+    // Identifies where audio is being played right now
+    static String getRouteKey(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return "default";
+        }
+
+        AudioManager audioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+        AudioDeviceInfo[] devices;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+            // The devices our stream would actually be routed to
+            devices = audioManager.getAudioDevicesForAttributes(new AudioAttributes.Builder()
+                    .setUsage(AudioAttributes.USAGE_GAME)
+                    .build()).toArray(new AudioDeviceInfo[0]);
+        }
+        else {
+            // No way to ask for the route, so fall back to everything that's connected
+            devices = audioManager.getDevices(AudioManager.GET_DEVICES_OUTPUTS);
+        }
+
+        String[] ids = new String[devices.length];
+        for (int i = 0; i < devices.length; i++) {
+            ids[i] = devices[i].getType() + ":" + devices[i].getId();
+        }
+        Arrays.sort(ids);
+        return Arrays.toString(ids);
+    }
+
+    static synchronized Entry get(Context context, String key) {
+        registerCallback(context);
+        return entries.get(key);
+    }
+
+    static synchronized void put(String key, Entry entry) {
+        entries.put(key, entry);
+    }
+
+    // For an entry that didn't work when we tried it again
+    static synchronized void remove(String key) {
+        entries.remove(key);
+    }
+}
@@ -0,0 +1,95 @@
+package com.limelight.binding.audio;
+
+import com.limelight.LimeLog;
+
+// Compares how long audio and video each take from arriving at the client until they're
+// actually output, and delays audio to match when it's ahead of the picture.
+//
+// Audio latency comes from the jitter buffer (queued in the AudioTrack according to its
+// timestamps, plus still waiting to be decoded), reported with every packet. Video latency is
+// estimated by the decoder once per stats window from the frame latency percentiles, plus a
+// user-supplied latency for the display itself since nothing tells us how long a TV spends
+// post-processing the picture.
+//
+// The correction is an extra latency target for the jitter buffer, so the audio is stretched to
+// the new latency without any gaps or drops. Audio arriving later than video is only corrected as
+// far as removing our own added delay. Holding back video instead would add input latency.
+public class AvSyncMonitor {
+    // Never hold audio back more than this
+    private static final int MAX_AUDIO_DELAY_MS = 250;
+
+    // Largest change to the audio delay per stats window (about a second). The jitter buffer
+    // stretches by at most 1/MAX_STRETCH_DIVISOR, so that's as far as latency can follow in a
+    // second. Stepping faster would only open a gap between target and latency that ends in drops.
+    private static final int MAX_DELAY_STEP_MS = 1000 / AudioJitterBuffer.MAX_STRETCH_DIVISOR;
+
+    private final boolean correctionEnabled;
+    private final int windowMs;
+    private final int displayLatencyMs;
+
+    // Written by the audio thread
+    private volatile float audioLatencyMs = -1;
+    private volatile int audioTargetMs;
+
+    // Written by the video stats thread
+    private volatile float skewMs = Float.NaN;
+    private volatile int audioDelayMs;
+
+    public AvSyncMonitor(boolean correctionEnabled, int windowMs, int displayLatencyMs) {
+        this.correctionEnabled = correctionEnabled;
+        this.windowMs = windowMs;
+        this.displayLatencyMs = displayLatencyMs;
+    }
+
+    void onAudioLatency(double latencyMs, int targetMs) {
+        audioLatencyMs = (float) latencyMs;
+        audioTargetMs = targetMs;
+    }
+
+    // Extra latency the jitter buffer should add to its own target
+    int getAudioDelayMs() {
+        return audioDelayMs;
+    }
+
+    // Called once per stats window with the estimated latency of the video path
+    public void onVideoLatency(float videoLatencyMs) {
+        float audioMs = audioLatencyMs;
+        if (audioMs < 0) {
+            // No audio yet
+            return;
+        }
+
+        // Positive when audio is heard before the matching picture is shown
+        float skew = videoLatencyMs + displayLatencyMs - audioMs;
+        float smoothedSkew = Float.isNaN(skewMs) ? skew : skewMs + (skew - skewMs) / 4;
+        skewMs = smoothedSkew;
+
+        if (!correctionEnabled || Math.abs(smoothedSkew) <= windowMs) {
+            return;
+        }
+
+        // The skew above is measured from the latency we have, not the one we asked for. Until
+        // the jitter buffer has caught up with the last step, another one would only wind up.
+        if (Math.abs(audioMs - audioTargetMs) > AudioJitterBuffer.DEAD_BAND_MS) {
+            return;
+        }
+
+        int step = (int) Math.max(-MAX_DELAY_STEP_MS, Math.min(MAX_DELAY_STEP_MS, smoothedSkew));
+        int newDelay = Math.max(0, Math.min(MAX_AUDIO_DELAY_MS, audioDelayMs + step));
+        if (newDelay != audioDelayMs) {
+            if (newDelay == 0 || newDelay == MAX_AUDIO_DELAY_MS || audioDelayMs == 0) {
+                LimeLog.info("A/V sync: skew " + (int) smoothedSkew + " ms, audio delay " + newDelay + " ms");
+            }
+            audioDelayMs = newDelay;
+        }
+    }
+
+    // Smoothed skew in ms (positive means audio is early), or NaN if not measured yet
+    public float getSkewMs() {
+        return skewMs;
+    }
+
+    public int getAppliedAudioDelayMs() {
+        return audioDelayMs;
+    }
+}
@@ -0,0 +1,139 @@
+package com.limelight.binding.audio;
+
+// Remaps interleaved 16-bit PCM between the channel layouts the decoder can produce (stereo, quad,
+// 5.1 and 7.1) using a gain matrix. Channels the output doesn't have are folded into the nearest
+// ones it does, with the usual -3 dB for a channel split across a pair, and LFE is dropped. Gains
+// are scaled so no output channel can clip. Going to a layout with more channels just places the
+// input channels and leaves the rest silent.
+//
+// Doesn't depend on anything Android, so it can be benchmarked on a plain JVM.
+final class ChannelMixer {
+    // Speaker positions, in the order the decoder and AudioTrack interleave them
+    private static final int FL = 0, FR = 1, FC = 2, LFE = 3, BL = 4, BR = 5, SL = 6, SR = 7;
+
+    private static final int[][] LAYOUTS = new int[9][];
+    static {
+        LAYOUTS[2] = new int[] { FL, FR };
+        LAYOUTS[4] = new int[] { FL, FR, BL, BR };
+        LAYOUTS[6] = new int[] { FL, FR, FC, LFE, BL, BR };
+        LAYOUTS[8] = new int[] { FL, FR, FC, LFE, BL, BR, SL, SR };
+    }
+
+    private static final float MINUS_3DB = 0.70710678f;
+
+    private final int inChannels;
+    private final int outChannels;
+
+    // Row-major, one row of inChannels gains per output channel
+    private final float[] matrix;
+
+    static boolean isSupported(int channels) {
+        return channels >= 0 && channels < LAYOUTS.length && LAYOUTS[channels] != null;
+    }
+
+    ChannelMixer(int inChannels, int outChannels) {
+        if (!isSupported(inChannels) || !isSupported(outChannels)) {
+            throw new IllegalArgumentException("Unsupported channel counts: " + inChannels + " -> " + outChannels);
+        }
+
+        this.inChannels = inChannels;
+        this.outChannels = outChannels;
+        this.matrix = buildMatrix(LAYOUTS[inChannels], LAYOUTS[outChannels]);
+    }
+
+    private static int indexOf(int[] layout, int position) {
+        for (int i = 0; i < layout.length; i++) {
+            if (layout[i] == position) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void route(float[] matrix, int inIndex, int inChannels, int[] outLayout, int position, float gain) {
+        int outIndex = indexOf(outLayout, position);
+        if (outIndex >= 0) {
+            matrix[outIndex * inChannels + inIndex] += gain;
+        }
+    }
+
+    private static float[] buildMatrix(int[] inLayout, int[] outLayout) {
+        float[] matrix = new float[outLayout.length * inLayout.length];
+        int inChannels = inLayout.length;
+
+        for (int i = 0; i < inChannels; i++) {
+            int position = inLayout[i];
+            if (indexOf(outLayout, position) >= 0) {
+                route(matrix, i, inChannels, outLayout, position, 1.0f);
+                continue;
+            }
+
+            switch (position) {
+                case FC:
+                    route(matrix, i, inChannels, outLayout, FL, MINUS_3DB);
+                    route(matrix, i, inChannels, outLayout, FR, MINUS_3DB);
+                    break;
+                case BL:
+                case BR:
+                case SL:
+                case SR: {
+                    boolean left = position == BL || position == SL;
+                    // Surrounds move to the other surround pair if there is one, else to the front
+                    int other = position == BL || position == BR ? (left ? SL : SR) : (left ? BL : BR);
+                    if (indexOf(outLayout, other) >= 0) {
+                        route(matrix, i, inChannels, outLayout, other, 1.0f);
+                    }
+                    else {
+                        route(matrix, i, inChannels, outLayout, left ? FL : FR, MINUS_3DB);
+                    }
+                    break;
+                }
+                case LFE:
+                default:
+                    // Small speakers can't reproduce it anyway
+                    break;
+            }
+        }
+
+        // Scale everything down by the same amount if any output could clip
+        float maxRowSum = 1.0f;
+        for (int o = 0; o < outLayout.length; o++) {
+            float rowSum = 0;
+            for (int i = 0; i < inChannels; i++) {
+                rowSum += matrix[o * inChannels + i];
+            }
+            maxRowSum = Math.max(maxRowSum, rowSum);
+        }
+        for (int k = 0; k < matrix.length; k++) {
+            matrix[k] /= maxRowSum;
+        }
+
+        return matrix;
+    }
+
+    int getInChannels() {
+        return inChannels;
+    }
+
+    int getOutChannels() {
+        return outChannels;
+    }
+
+    // Mixes frames from in to out. The loops are kept flat and branch-free so the JIT can
+    // unroll them.
+    void mix(short[] in, int frames, short[] out) {
+        float[] m = matrix;
+        int inCh = inChannels;
+        int outCh = outChannels;
+
+        for (int f = 0, inBase = 0, outBase = 0; f < frames; f++, inBase += inCh, outBase += outCh) {
+            for (int o = 0, row = 0; o < outCh; o++, row += inCh) {
+                float acc = 0;
+                for (int i = 0; i < inCh; i++) {
+                    acc += m[row + i] * in[inBase + i];
+                }
+                out[outBase + o] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, (int) acc));
+            }
+        }
+    }
+}
@@ -8,11 +8,9 @@ import android.media.audiofx.AutomaticGainControl;
 import android.media.audiofx.NoiseSuppressor;
 import android.os.Build;
 import android.os.Process;
-import android.os.SystemClock;
 
 import com.limelight.LimeLog;
 
-import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class MicrophoneCapture {
@@ -31,23 +29,21 @@ public class MicrophoneCapture {
     private NoiseSuppressor noiseSuppressor;
     
     // 音频帧缓冲
-    private byte[] frameBuffer;
+    private final int bytesPerFrame;
+    private final byte[] frameBuffer;
     private int frameBufferPos = 0;
     
-    // 时序控制
-    private long lastFrameTime = 0;
-    private long frameCount = 0;
-    
     public interface MicrophoneDataCallback {
         void onMicrophoneData(byte[] data, int offset, int length);
     }
     
-    public MicrophoneCapture(MicrophoneDataCallback callback) {
+    public MicrophoneCapture(MicrophoneDataCallback callback, int bytesPerFrame) {
         this.dataCallback = callback;
         // 使用更小的缓冲区进行更频繁的读取
         this.bufferSize = MicrophoneConfig.CAPTURE_BUFFER_SIZE;
-        // 初始化帧缓冲区
-        this.frameBuffer = new byte[MicrophoneConfig.BYTES_PER_FRAME];
+        // 初始化帧缓冲区，大小与编码帧长一致
+        this.bytesPerFrame = bytesPerFrame;
+        this.frameBuffer = new byte[bytesPerFrame];
     }
     
     public boolean start() {
@@ -87,26 +83,24 @@ public class MicrophoneCapture {
             initializeAudioEffects();
             
             running.set(true);
-            lastFrameTime = SystemClock.elapsedRealtimeNanos();
             
             captureThread = new Thread(() -> {
                 Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
                 
-                ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
-                byte[] data = new byte[bufferSize];
-                
                 try {
                     audioRecord.startRecording();
                     LimeLog.info("麦克风捕获已启动，缓冲区大小: " + bufferSize + " 字节");
                     
                     while (running.get()) {
-                        int bytesRead = audioRecord.read(buffer, bufferSize);
+                        // 阻塞读取直到凑满一帧，发送节奏完全由麦克风的采集时钟决定，
+                        // 不需要额外的睡眠或轮询
+                        int bytesRead = audioRecord.read(frameBuffer, frameBufferPos,
+                                bytesPerFrame - frameBufferPos);
                         if (bytesRead > 0) {
-                            buffer.get(data, 0, bytesRead);
-                            buffer.clear();
-                            
-                            // 处理音频数据，确保帧的连续性
-                            processAudioData(data, 0, bytesRead);
+                            frameBufferPos += bytesRead;
+                            if (frameBufferPos == bytesPerFrame) {
+                                onFrameCaptured();
+                            }
                         } else if (bytesRead == AudioRecord.ERROR_INVALID_OPERATION) {
                             LimeLog.warning("AudioRecord读取错误: ERROR_INVALID_OPERATION");
                             break;
@@ -144,57 +138,14 @@ public class MicrophoneCapture {
     }
     
     /**
-     * 处理音频数据，确保发送完整的帧
+     * 一帧采集完成，交给编码器
      */
-    private void processAudioData(byte[] data, int offset, int length) {
-        int remainingBytes = length;
-        int dataOffset = offset;
+    private void onFrameCaptured() {
+        dataCallback.onMicrophoneData(frameBuffer, 0, bytesPerFrame);
+        frameBufferPos = 0; // 重置缓冲区位置
         
-        while (remainingBytes > 0) {
-            // 计算当前帧还需要多少字节
-            int bytesNeeded = MicrophoneConfig.BYTES_PER_FRAME - frameBufferPos;
-            int bytesToCopy = Math.min(remainingBytes, bytesNeeded);
-            
-            // 复制数据到帧缓冲区
-            System.arraycopy(data, dataOffset, frameBuffer, frameBufferPos, bytesToCopy);
-            frameBufferPos += bytesToCopy;
-            dataOffset += bytesToCopy;
-            remainingBytes -= bytesToCopy;
-            
-            // 如果帧缓冲区满了，发送完整的帧
-            if (frameBufferPos >= MicrophoneConfig.BYTES_PER_FRAME) {
-                // 检查时序
-                long currentTime = SystemClock.elapsedRealtimeNanos();
-                long timeDiff = currentTime - lastFrameTime;
-                
-                if (MicrophoneConfig.ENABLE_AUDIO_SYNC && 
-                    timeDiff < MicrophoneConfig.FRAME_INTERVAL_NS * 0.8) {
-                    // 帧间隔太短，等待一下
-                    try {
-                        Thread.sleep(1);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    }
-                    continue;
-                }
-                
-                // 发送帧
-                dataCallback.onMicrophoneData(frameBuffer, 0, MicrophoneConfig.BYTES_PER_FRAME);
-                frameBufferPos = 0; // 重置缓冲区位置
-                lastFrameTime = currentTime;
-                frameCount++;
-                
-                // 记录诊断信息
-                AudioDiagnostics.recordFrameCaptured();
-                
-                // 每100帧记录一次统计信息
-                if (frameCount % 100 == 0) {
-                    LimeLog.info("麦克风帧统计: " + frameCount + " 帧, 平均间隔: " + 
-                               (timeDiff / 1000000) + "ms");
-                }
-            }
-        }
+        // 记录诊断信息（统计由诊断线程定期输出）
+        AudioDiagnostics.recordFrameCaptured();
     }
     
     public void stop() {
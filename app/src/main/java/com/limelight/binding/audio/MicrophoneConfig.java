@@ -12,9 +12,12 @@ public class MicrophoneConfig {
     public static final int SAMPLE_RATE = 48000; // 采样率
     public static final int CHANNELS = 1; // 声道数（单声道）
     private static int opusBitrate = 64; // Opus编码比特率 (默认64 kbps)
+    private static int frameSizeMs = MicrophoneProfile.FRAME_SIZE_20_MS; // Opus帧大小 (毫秒)
+    private static boolean enableFEC = true; // 启用Opus带内前向纠错
+    private static boolean enableDTX = true; // 启用DTX（静音时几乎不发送数据）
     
     // 网络参数
-    public static final int MAX_QUEUE_SIZE = 5;
+    public static final int MAX_PACKET_SIZE = 4000; // 单个Opus数据包的最大字节数
     
     // 权限请求码
     public static final int PERMISSION_REQUEST_MICROPHONE = 1001;
@@ -22,22 +25,9 @@ public class MicrophoneConfig {
     // 延迟参数
     public static final int PERMISSION_DELAY_MS = 100; // 权限授予后的延迟时间
     
-    // 音频连续性参数
-    public static final int FRAME_SIZE_MS = 20; // Opus帧大小 (毫秒)
-    public static final int SAMPLES_PER_FRAME = SAMPLE_RATE * FRAME_SIZE_MS / 1000; // 每帧采样数 (960)
-    public static final int BYTES_PER_FRAME = SAMPLES_PER_FRAME * CHANNELS * 2; // 每帧字节数 (1920)
-    
-    // 发送线程参数
-    public static final int SENDER_THREAD_SLEEP_MS = 5; // 发送线程睡眠时间
-    
     // 音频捕获优化参数
     public static final int CAPTURE_BUFFER_SIZE_MS = 40; // 捕获缓冲区大小 (毫秒)
     public static final int CAPTURE_BUFFER_SIZE = SAMPLE_RATE * CAPTURE_BUFFER_SIZE_MS / 1000 * CHANNELS * 2; // 捕获缓冲区字节数
-    public static final int FRAME_INTERVAL_MS = 20; // 帧间隔时间 (毫秒)
-    public static final long FRAME_INTERVAL_NS = FRAME_INTERVAL_MS * 1000000L; // 帧间隔纳秒
-    
-    // 音频质量参数
-    public static final boolean ENABLE_AUDIO_SYNC = true; // 启用音频同步
     
     // 回声消除和音频处理参数
     private static boolean enableAEC = true; // 启用回声消除器
@@ -62,16 +52,26 @@ public class MicrophoneConfig {
     }
     
     /**
-     * 从配置中更新比特率设置
+     * 从配置中更新比特率、帧长、FEC和DTX设置
      * @param context 上下文
      */
-    public static void updateBitrateFromConfig(Context context) {
+    public static void updateFromConfig(Context context) {
         if (context != null) {
             PreferenceConfiguration config = PreferenceConfiguration.readPreferences(context);
             setOpusBitrate(config.micBitrate);
+            frameSizeMs = config.micFrameSizeMs;
+            enableFEC = config.micFec;
+            enableDTX = config.micDtx;
         }
     }
     
+    /**
+     * 根据当前配置协商出本次会话的编码参数
+     */
+    public static MicrophoneProfile getProfile() {
+        return new MicrophoneProfile(SAMPLE_RATE, CHANNELS, opusBitrate, frameSizeMs, enableFEC, enableDTX);
+    }
+    
     // ========== 回声消除和音频处理配置方法 ==========
     
     /**
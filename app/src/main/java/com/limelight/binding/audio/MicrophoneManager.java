@@ -74,7 +74,7 @@ public class MicrophoneManager {
         }
         
         try {
-            MicrophoneConfig.updateBitrateFromConfig(context);
+            MicrophoneConfig.updateFromConfig(context);
             microphoneStream = new MicrophoneStream(connection);
 
             if (!microphoneStream.start()) {
@@ -158,7 +158,7 @@ public class MicrophoneManager {
     private void restartMicrophoneStream() {
         LimeLog.warning("麦克风恢复失败，尝试重新初始化");
         microphoneStream.stop();
-        MicrophoneConfig.updateBitrateFromConfig(context);
+        MicrophoneConfig.updateFromConfig(context);
 
         microphoneStream = new MicrophoneStream(connection);
         if (microphoneStream.start()) {
@@ -381,7 +381,7 @@ public class MicrophoneManager {
         this.enableMic = enable;
         
         if (enable) {
-            MicrophoneConfig.updateBitrateFromConfig(context);
+            MicrophoneConfig.updateFromConfig(context);
         }
         
         if (micButton != null) {
@@ -0,0 +1,55 @@
+package com.limelight.binding.audio;
+
+/**
+ * 一次麦克风会话使用的编码参数
+ * 在创建麦克风流时从配置中协商出来，之后不再改变，
+ * 采集、编码、发送三个环节都以它为准
+ */
+public class MicrophoneProfile {
+    // Opus支持的帧长 (毫秒)
+    public static final int FRAME_SIZE_5_MS = 5;
+    public static final int FRAME_SIZE_10_MS = 10;
+    public static final int FRAME_SIZE_20_MS = 20;
+
+    // 队列中最多积压的音频时长，超过后丢弃最旧的数据包
+    private static final int MAX_QUEUED_MS = 100;
+
+    public final int sampleRate;
+    public final int channels;
+    public final int bitrate; // bps
+    public final int frameSizeMs;
+    public final int samplesPerFrame;
+    public final int bytesPerFrame;
+    public final boolean fec;
+    public final boolean dtx;
+
+    MicrophoneProfile(int sampleRate, int channels, int bitrate, int frameSizeMs, boolean fec, boolean dtx) {
+        if (frameSizeMs != FRAME_SIZE_5_MS && frameSizeMs != FRAME_SIZE_10_MS) {
+            frameSizeMs = FRAME_SIZE_20_MS;
+        }
+
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.bitrate = bitrate;
+        this.frameSizeMs = frameSizeMs;
+        this.samplesPerFrame = sampleRate * frameSizeMs / 1000;
+        this.bytesPerFrame = samplesPerFrame * channels * 2;
+
+        // Opus的带内FEC由SILK层实现，5ms帧只能走CELT模式，开了也不会生效
+        this.fec = fec && frameSizeMs >= FRAME_SIZE_10_MS;
+        this.dtx = dtx;
+    }
+
+    /**
+     * 发送队列的容量（数据包个数），保证积压的时长与帧长无关
+     */
+    public int getMaxQueuedPackets() {
+        return Math.max(MAX_QUEUED_MS / frameSizeMs, 2);
+    }
+
+    @Override
+    public String toString() {
+        return "帧长=" + frameSizeMs + "ms, 比特率=" + bitrate / 1000 + "kbps, FEC=" +
+                (fec ? "启用" : "禁用") + ", DTX=" + (dtx ? "启用" : "禁用");
+    }
+}
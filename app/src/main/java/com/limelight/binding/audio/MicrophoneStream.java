@@ -4,12 +4,14 @@ import com.limelight.LimeLog;
 import com.limelight.nvstream.NvConnection;
 import com.limelight.nvstream.jni.MoonBridge;
 
-import java.util.concurrent.LinkedBlockingQueue;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class MicrophoneStream implements MicrophoneCapture.MicrophoneDataCallback {
     
     private final NvConnection conn;
+    private final MicrophoneProfile profile;
     private MicrophoneCapture capture;
     private OpusEncoder encoder;
     private final Object encoderLock = new Object();
@@ -17,12 +19,25 @@ public class MicrophoneStream implements MicrophoneCapture.MicrophoneDataCallbac
     private final AtomicBoolean running = new AtomicBoolean(false);
     private final AtomicBoolean micActive = new AtomicBoolean(false);
     private final AtomicBoolean hostRequested = new AtomicBoolean(false);
-    private LinkedBlockingQueue<byte[]> packetQueue;
+    // 采集线程编码后交给发送线程，发送线程在没有数据时阻塞等待。
+    // 数据包是预先分配的direct ByteBuffer（有效长度为limit），发送后放回空闲池重复使用，
+    // 所以整个麦克风路径不会产生垃圾对象
+    private final ArrayBlockingQueue<ByteBuffer> packetQueue;
+    private final ArrayBlockingQueue<ByteBuffer> freePackets;
     
     public MicrophoneStream(NvConnection conn) {
         this.conn = conn;
-        this.packetQueue = new LinkedBlockingQueue<>(MicrophoneConfig.MAX_QUEUE_SIZE);
-        LimeLog.info("初始化麦克风流");
+        this.profile = MicrophoneConfig.getProfile();
+        this.packetQueue = new ArrayBlockingQueue<>(profile.getMaxQueuedPackets());
+        
+        // 队列满额 + 发送线程正在发送的一个
+        int poolSize = profile.getMaxQueuedPackets() + 1;
+        this.freePackets = new ArrayBlockingQueue<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            freePackets.add(ByteBuffer.allocateDirect(MicrophoneConfig.MAX_PACKET_SIZE));
+        }
+        
+        LimeLog.info("初始化麦克风流: " + profile);
     }
     
     public boolean start() {
@@ -85,7 +100,7 @@ public class MicrophoneStream implements MicrophoneCapture.MicrophoneDataCallbac
             encoder = null;
         }
         
-        packetQueue.clear();
+        recycleQueuedPackets();
         
         // 不停止发送线程，因为我们将来可能需要重新启动麦克风
     }
@@ -105,10 +120,10 @@ public class MicrophoneStream implements MicrophoneCapture.MicrophoneDataCallbac
             }
             
             // 创建编码器
-            encoder = new OpusEncoder(MicrophoneConfig.SAMPLE_RATE, MicrophoneConfig.CHANNELS, MicrophoneConfig.getOpusBitrate());
+            encoder = new OpusEncoder(profile);
             
             // 创建并启动麦克风捕获
-            capture = new MicrophoneCapture(this);
+            capture = new MicrophoneCapture(this, profile.bytesPerFrame);
             if (!capture.start()) {
                 LimeLog.severe("无法启动麦克风捕获");
                 cleanup();
@@ -148,6 +163,8 @@ public class MicrophoneStream implements MicrophoneCapture.MicrophoneDataCallbac
         }
         
         if (senderThread != null) {
+            // 发送线程阻塞在队列上，需要中断才能退出
+            senderThread.interrupt();
             try {
                 senderThread.join(300); // 等待最多300ms
             } catch (InterruptedException e) {}
@@ -218,7 +235,14 @@ public class MicrophoneStream implements MicrophoneCapture.MicrophoneDataCallbac
             }
         }
         
-        packetQueue.clear();
+        recycleQueuedPackets();
+    }
+    
+    /**
+     * 丢弃尚未发送的数据包，把它们放回空闲池
+     */
+    private void recycleQueuedPackets() {
+        packetQueue.drainTo(freePackets);
     }
 
     @Override
@@ -227,126 +251,99 @@ public class MicrophoneStream implements MicrophoneCapture.MicrophoneDataCallbac
             return;
         }
         
+        ByteBuffer packet = freePackets.poll();
+        if (packet == null) {
+            // 空闲池已空说明队列已满，丢弃最旧的数据包并复用它的缓冲区
+            packet = packetQueue.poll();
+            if (packet == null) {
+                // 缓冲区都在发送线程手里，只能丢弃当前帧
+                AudioDiagnostics.recordFrameDropped();
+                return;
+            }
+            AudioDiagnostics.recordFrameDropped();
+        }
+        
         try {
-            byte[] encoded = null;
+            int encodedLength = 0;
             
             // Synchronized access to encoder
             synchronized (encoderLock) {
                 if (encoder != null) {
-                    encoded = encoder.encode(data, offset, length);
+                    encodedLength = encoder.encode(data, offset, length, packet);
                 }
             }
             
-            if (encoded != null) {
+            if (encodedLength > 0) {
                 // 记录编码成功
                 AudioDiagnostics.recordFrameEncoded();
                 
-                int queueSize = packetQueue.size();
-                
-                if (queueSize >= MicrophoneConfig.MAX_QUEUE_SIZE) {
-                    // 队列已满，丢弃最旧的数据包
-                    packetQueue.poll();
-                    AudioDiagnostics.recordFrameDropped();
-                    LimeLog.warning("音频队列已满，丢弃最旧数据包");
-                }
-                
-                // 将编码数据加入队列
-                if (!packetQueue.offer(encoded)) {
+                // 将编码数据加入队列，唤醒发送线程
+                packet.clear();
+                packet.limit(encodedLength);
+                if (packetQueue.offer(packet)) {
+                    packet = null;
+                } else {
                     // 如果仍然无法加入队列，丢弃当前数据包
                     AudioDiagnostics.recordFrameDropped();
-                    LimeLog.warning("无法将编码数据加入队列，丢弃当前数据包");
                 }
+            } else if (encodedLength < 0) {
+                AudioDiagnostics.recordEncodingError();
             }
         } catch (Exception e) {
             AudioDiagnostics.recordEncodingError();
             LimeLog.warning("音频编码错误: " + e.getMessage());
+        } finally {
+            if (packet != null) {
+                freePackets.offer(packet);
+            }
         }
     }
     
     private void senderThreadProc() {
         long lastSendTime = 0;
-        long sendCount = 0;
-        long totalLatency = 0;
-        long maxLatency = 0;
-        long lastStatsTime = System.currentTimeMillis();
+        long lateSendThresholdNs = profile.frameSizeMs * 2 * 1000000L;
         
         while (running.get()) {
+            ByteBuffer packet;
             try {
-                // 检查连接状态和麦克风状态
-                if (!hostRequested.get() || !micActive.get()) {
-                    Thread.sleep(MicrophoneConfig.SENDER_THREAD_SLEEP_MS);
-                    continue;
-                }
-                
-                // 额外检查：如果连接已断开，立即停止发送
-                if (conn == null || !isConnectionActive()) {
-                    LimeLog.info("检测到连接断开，停止麦克风发送");
-                    break;
-                }
-
-                long currentTime = System.currentTimeMillis();
-                
-                // 动态调整发送频率，基于队列大小
-                int queueSize = packetQueue.size();
-                long targetInterval = MicrophoneConfig.FRAME_INTERVAL_MS;
-                
-                // 如果队列过大，加快发送频率
-                if (queueSize > MicrophoneConfig.MAX_QUEUE_SIZE * 0.7) {
-                    targetInterval = Math.max(5, MicrophoneConfig.FRAME_INTERVAL_MS / 2);
-                } else if (queueSize < MicrophoneConfig.MAX_QUEUE_SIZE * 0.3) {
-                    // 如果队列较小，可以稍微放慢
-                    targetInterval = MicrophoneConfig.FRAME_INTERVAL_MS;
-                }
-                
-                if (currentTime - lastSendTime < targetInterval) {
-                    Thread.sleep(1);
-                    continue;
-                }
-
-                byte[] encoded = packetQueue.poll();
-                if (encoded == null) {
-                    // 没有数据可发送，短暂等待
-                    Thread.sleep(1);
-                    continue;
-                }
-
-                // 计算发送延迟
-                long sendLatency = currentTime - lastSendTime;
-                totalLatency += sendLatency;
-                maxLatency = Math.max(maxLatency, sendLatency);
-
-                // 发送 Opus 数据
-                int result = MoonBridge.sendMicrophoneOpusData(encoded);
-                if (result < 0) {
-                    AudioDiagnostics.recordSendingError();
-                    LimeLog.warning("麦克风数据发送失败: " + result);
-                    continue;
-                }
-                
-                lastSendTime = currentTime;
-                sendCount++;
-                
-                // 记录发送成功
-                AudioDiagnostics.recordFrameSent();
-                
-                // 每100个包记录一次详细统计信息
-                if (sendCount % 100 == 0) {
-                    long currentStatsTime = System.currentTimeMillis();
-                    long statsInterval = currentStatsTime - lastStatsTime;
-                    double avgLatency = sendCount > 0 ? (double) totalLatency / sendCount : 0;
-                    
-                    LimeLog.info(String.format("麦克风发送统计: 包数=%d, 队列大小=%d, 平均延迟=%.1fms, 最大延迟=%dms, 统计间隔=%dms", 
-                        sendCount, queueSize, avgLatency, maxLatency, statsInterval));
-                    
-                    // 重置统计
-                    lastStatsTime = currentStatsTime;
-                    totalLatency = 0;
-                    maxLatency = 0;
-                }
-                
+                // 阻塞等待下一个编码好的数据包。数据包按采集时钟产生，
+                // 所以这里不需要自己控制发送节奏，麦克风未启用时也不会被唤醒
+                packet = packetQueue.take();
             } catch (InterruptedException e) {
                 break;
             }
+            
+            // 主机未请求或麦克风已暂停时丢弃残留的数据包
+            if (!hostRequested.get() || !micActive.get()) {
+                freePackets.offer(packet);
+                continue;
+            }
+            
+            // 额外检查：如果连接已断开，立即停止发送
+            if (conn == null || !isConnectionActive()) {
+                freePackets.offer(packet);
+                LimeLog.info("检测到连接断开，停止麦克风发送");
+                break;
+            }
+
+            long currentTime = System.nanoTime();
+
+            // 发送 Opus 数据，发送完成后缓冲区即可复用
+            int result = MoonBridge.sendMicrophoneOpusData(packet, packet.limit());
+            freePackets.offer(packet);
+            if (result < 0) {
+                AudioDiagnostics.recordSendingError();
+                continue;
+            }
+            
+            // 发送间隔超过两个帧长说明采集或编码出现了卡顿
+            if (lastSendTime != 0 && currentTime - lastSendTime > lateSendThresholdNs) {
+                AudioDiagnostics.recordLateSend();
+            }
+            lastSendTime = currentTime;
+            
+            // 记录发送成功（统计由诊断线程定期输出）
+            AudioDiagnostics.recordFrameSent();
         }
         
         LimeLog.info("麦克风发送线程已结束");
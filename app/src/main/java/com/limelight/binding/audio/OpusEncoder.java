@@ -2,33 +2,36 @@ package com.limelight.binding.audio;
 
 import com.limelight.LimeLog;
 
+import java.nio.ByteBuffer;
+
 public class OpusEncoder {
     private long nativePtr;
-    private final int sampleRate;
-    private final int channels;
-    private final int bitrate;
+    private final MicrophoneProfile profile;
     
     static {
         System.loadLibrary("moonlight-core");
     }
     
-    public OpusEncoder(int sampleRate, int channels, int bitrate) {
-        this.sampleRate = sampleRate;
-        this.channels = channels;
-        this.bitrate = bitrate;
+    public OpusEncoder(MicrophoneProfile profile) {
+        this.profile = profile;
         
-        nativePtr = nativeInit(sampleRate, channels, bitrate);
+        nativePtr = nativeInit(profile.sampleRate, profile.channels, profile.bitrate,
+                profile.frameSizeMs, profile.fec, profile.dtx);
         if (nativePtr == 0) {
             throw new IllegalStateException("无法初始化Opus编码器");
         }
     }
     
-    public byte[] encode(byte[] pcmData, int offset, int length) {
+    /**
+     * 将一帧PCM编码到调用者提供的direct ByteBuffer中
+     * @return 编码后的字节数，失败时返回负值
+     */
+    public int encode(byte[] pcmData, int offset, int length, ByteBuffer out) {
         if (nativePtr == 0) {
-            return null;
+            return -1;
         }
         
-        return nativeEncode(nativePtr, pcmData, offset, length);
+        return nativeEncode(nativePtr, pcmData, offset, length, out);
     }
     
     public synchronized void release() {
@@ -48,7 +51,8 @@ public class OpusEncoder {
     }
     
     // 这些方法需要在原生代码中实现
-    private static native long nativeInit(int sampleRate, int channels, int bitrate);
-    private static native byte[] nativeEncode(long handle, byte[] pcmData, int offset, int length);
+    private static native long nativeInit(int sampleRate, int channels, int bitrate,
+                                          int frameSizeMs, boolean fec, boolean dtx);
+    private static native int nativeEncode(long handle, byte[] pcmData, int offset, int length, ByteBuffer out);
     private static native void nativeDestroy(long handle);
 }
@@ -0,0 +1,127 @@
+package com.limelight.binding.audio;
+
+import java.nio.ShortBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// A bounded ring of interleaved 16-bit PCM samples handed from the audio decode thread to the
+// audio output thread. There is a single producer and a single consumer, so each side only ever
+// writes its own position and no locks are needed.
+//
+// Unlike OutputBufferQueue, the producer never evicts anything. The jitter buffer in front of
+// this keeps latency bounded, so a full ring means something is badly wrong and we just drop the
+// incoming packet rather than blocking the decoder.
+class PcmRingBuffer {
+    private final short[] samples;
+    private final int mask;
+
+    // Monotonically increasing sample positions
+    private final AtomicLong readPosition = new AtomicLong();
+    private final AtomicLong writePosition = new AtomicLong();
+
+    // Consumer thread parked in awaitData(), if any
+    private volatile Thread waiter;
+
+    PcmRingBuffer(int minCapacity) {
+        int capacity = Integer.highestOneBit(minCapacity);
+        if (capacity < minCapacity) {
+            capacity <<= 1;
+        }
+
+        this.samples = new short[capacity];
+        this.mask = capacity - 1;
+    }
+
+    // Producer only. Returns false if there wasn't room for all of the samples,
+    // in which case none of them were written.
+    boolean write(short[] src, int offset, int length) {
+        long w = writePosition.get();
+        if (samples.length - (w - readPosition.get()) < length) {
+            return false;
+        }
+
+        int start = (int) (w & mask);
+        int firstPart = Math.min(length, samples.length - start);
+        System.arraycopy(src, offset, samples, start, firstPart);
+        System.arraycopy(src, offset + firstPart, samples, 0, length - firstPart);
+
+        // Publish the samples before the new position. This must be a full volatile write so
+        // it can't be reordered with our read of the waiter below.
+        writePosition.set(w + length);
+
+        Thread t = waiter;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+
+        return true;
+    }
+
+    // Producer only. Same as above, but takes the samples from the buffer's current position.
+    boolean write(ShortBuffer src, int length) {
+        long w = writePosition.get();
+        if (samples.length - (w - readPosition.get()) < length) {
+            return false;
+        }
+
+        int start = (int) (w & mask);
+        int firstPart = Math.min(length, samples.length - start);
+        src.get(samples, start, firstPart);
+        src.get(samples, 0, length - firstPart);
+
+        writePosition.set(w + length);
+
+        Thread t = waiter;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+
+        return true;
+    }
+
+    // Consumer only. Copies up to maxLength samples and returns how many were copied.
+    int read(short[] dst, int offset, int maxLength) {
+        long r = readPosition.get();
+        int length = (int) Math.min(maxLength, writePosition.get() - r);
+        if (length <= 0) {
+            return 0;
+        }
+
+        int start = (int) (r & mask);
+        int firstPart = Math.min(length, samples.length - start);
+        System.arraycopy(samples, start, dst, offset, firstPart);
+        System.arraycopy(samples, 0, dst, offset + firstPart, length - firstPart);
+
+        // Only now may the producer reuse these samples
+        readPosition.lazySet(r + length);
+        return length;
+    }
+
+    // Consumer only. Parks until samples are available or the deadline (in System.nanoTime()
+    // terms) passes. Returns true if there are samples to read.
+    boolean awaitData(long deadlineNs) {
+        if (available() > 0) {
+            return true;
+        }
+
+        waiter = Thread.currentThread();
+        try {
+            while (available() == 0) {
+                long remainingNs = deadlineNs - System.nanoTime();
+                if (remainingNs <= 0 || Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+
+                LockSupport.parkNanos(this, remainingNs);
+            }
+
+            return true;
+        } finally {
+            waiter = null;
+        }
+    }
+
+    int available() {
+        return (int) (writePosition.get() - readPosition.get());
+    }
+}
@@ -114,6 +114,10 @@ public class ControllerHandler implements InputManager.InputDeviceListener, UsbD
     private final SparseArray<InputDeviceContext> inputDeviceContexts = new SparseArray<>();
     private final SparseArray<UsbDeviceContext> usbDeviceContexts = new SparseArray<>();
 
+    // Contexts with an assigned controller number, by that number, so fusing a split controller
+    // only looks at its own devices. The default context isn't in here.
+    private final SparseArray<ArrayList<GenericControllerContext>> controllerMembers = new SparseArray<>();
+
     private final NvConnection conn;
     private final Activity activityContext;
     private final double stickDeadzone;
@@ -127,6 +131,7 @@ public class ControllerHandler implements InputManager.InputDeviceListener, UsbD
     private final Handler mainThreadHandler;
     private final HandlerThread backgroundHandlerThread;
     private final Handler backgroundThreadHandler;
+    private final ControllerStateSender stateSender;
     private boolean hasGameController;
     private boolean stopped = false;
 
@@ -414,13 +419,9 @@ public class ControllerHandler implements InputManager.InputDeviceListener, UsbD
     }
 
     private boolean isGyroHoldActiveFor(short controllerNumber) {
-        for (int i = 0; i < usbDeviceContexts.size(); i++) {
-            UsbDeviceContext c = usbDeviceContexts.valueAt(i);
-            if (c.controllerNumber == controllerNumber && c.gyroHoldActive) return true;
-        }
-        for (int i = 0; i < inputDeviceContexts.size(); i++) {
-            InputDeviceContext c = inputDeviceContexts.valueAt(i);
-            if (c.controllerNumber == controllerNumber && c.gyroHoldActive) return true;
+        ArrayList<GenericControllerContext> members = controllerMembers.get(controllerNumber);
+        for (int i = 0; members != null && i < members.size(); i++) {
+            if (members.get(i).gyroHoldActive) return true;
         }
         if (defaultContext.controllerNumber == controllerNumber && defaultContext.gyroHoldActive) return true;
         return false;
@@ -442,6 +443,10 @@ public class ControllerHandler implements InputManager.InputDeviceListener, UsbD
         this.backgroundHandlerThread.start();
         this.backgroundThreadHandler = new Handler(backgroundHandlerThread.getLooper());
 
+        // Held-back analog state is flushed from the background thread so it isn't delayed
+        // by whatever the main thread is doing
+        this.stateSender = new ControllerStateSender(conn, backgroundThreadHandler, prefConfig.controllerAnalogRate);
+
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
             this.deviceVibratorManager = (VibratorManager) activityContext.getSystemService(Context.VIBRATOR_MANAGER_SERVICE);
         }
@@ -560,6 +565,12 @@ public class ControllerHandler implements InputManager.InputDeviceListener, UsbD
         InputDeviceContext newContext = createInputDeviceContextForDevice(device);
         newContext.migrateContext(existingContext);
         inputDeviceContexts.put(deviceId, newContext);
+
+        // The new context takes the old one's place in its controller's fusion set
+        if (newContext.assignedControllerNumber) {
+            removeControllerMember(existingContext);
+            addControllerMember(newContext);
+        }
     }
 
     public void stop() {
@@ -584,6 +595,7 @@ public class ControllerHandler implements InputManager.InputDeviceListener, UsbD
         }
 
         deviceVibrator.cancel();
+        stateSender.cancelAll();
     }
 
     public void destroy() {
@@ -706,6 +718,10 @@ public class ControllerHandler implements InputManager.InputDeviceListener, UsbD
     }
 
     private void releaseControllerNumber(GenericControllerContext context) {
+        if (context.assignedControllerNumber) {
+            removeControllerMember(context);
+        }
+
         // If we reserved a controller number, remove that reservation
         if (context.reservedControllerNumber) {
             LimeLog.info("Controller number "+context.controllerNumber+" is now available");
@@ -716,6 +732,7 @@ public class ControllerHandler implements InputManager.InputDeviceListener, UsbD
         // We must do this after clearing the currentControllers entry so this
         // causes the device to be removed on the server PC.
         if (context.assignedControllerNumber) {
+            stateSender.reset(context.controllerNumber);
             conn.sendControllerInput(context.controllerNumber, getActiveControllerMask(),
                     (short) 0,
                     (byte) 0, (byte) 0,
@@ -749,6 +766,39 @@ public class ControllerHandler implements InputManager.InputDeviceListener, UsbD
         return true;
     }
 
+    private void reserveControllerNumber(GenericControllerContext context) {
+        LimeLog.info("Reserving the next available controller number");
+
+        // Lowest unused controller value, if any are left
+        int unusedControllers = ~currentControllers & ((1 << MAX_GAMEPADS) - 1);
+        if (unusedControllers != 0) {
+            short i = (short) Integer.numberOfTrailingZeros(unusedControllers);
+            currentControllers |= (1 << i);
+
+            // Take this value out of the initial gamepad set
+            initialControllers &= ~(1 << i);
+
+            context.controllerNumber = i;
+            context.reservedControllerNumber = true;
+        }
+    }
+
+    private void addControllerMember(GenericControllerContext context) {
+        ArrayList<GenericControllerContext> members = controllerMembers.get(context.controllerNumber);
+        if (members == null) {
+            members = new ArrayList<>();
+            controllerMembers.put(context.controllerNumber, members);
+        }
+        members.add(context);
+    }
+
+    private void removeControllerMember(GenericControllerContext context) {
+        ArrayList<GenericControllerContext> members = controllerMembers.get(context.controllerNumber);
+        if (members != null) {
+            members.remove(context);
+        }
+    }
+
     // Called before sending input but after we've determined that this
     // is definitely a controller (not a keyboard, mouse, or something else)
     private void assignControllerNumberIfNeeded(GenericControllerContext context) {
@@ -767,20 +817,7 @@ public class ControllerHandler implements InputManager.InputDeviceListener, UsbD
             else if (prefConfig.multiController && devContext.hasJoystickAxes) {
                 context.controllerNumber = 0;
 
-                LimeLog.info("Reserving the next available controller number");
-                for (short i = 0; i < MAX_GAMEPADS; i++) {
-                    if ((currentControllers & (1 << i)) == 0) {
-                        // Found an unused controller value
-                        currentControllers |= (1 << i);
-
-                        // Take this value out of the initial gamepad set
-                        initialControllers &= ~(1 << i);
-
-                        context.controllerNumber = i;
-                        context.reservedControllerNumber = true;
-                        break;
-                    }
-                }
+                reserveControllerNumber(context);
             }
             else if (!devContext.hasJoystickAxes) {
                 // If this device doesn't have joystick axes, it may be an input device associated
@@ -834,20 +871,7 @@ public class ControllerHandler implements InputManager.InputDeviceListener, UsbD
             if (prefConfig.multiController) {
                 context.controllerNumber = 0;
 
-                LimeLog.info("Reserving the next available controller number");
-                for (short i = 0; i < MAX_GAMEPADS; i++) {
-                    if ((currentControllers & (1 << i)) == 0) {
-                        // Found an unused controller value
-                        currentControllers |= (1 << i);
-
-                        // Take this value out of the initial gamepad set
-                        initialControllers &= ~(1 << i);
-
-                        context.controllerNumber = i;
-                        context.reservedControllerNumber = true;
-                        break;
-                    }
-                }
+                reserveControllerNumber(context);
             }
             else {
                 LimeLog.info("Not reserving a controller number");
@@ -857,6 +881,7 @@ public class ControllerHandler implements InputManager.InputDeviceListener, UsbD
 
         LimeLog.info("Assigned as controller "+context.controllerNumber);
         context.assignedControllerNumber = true;
+        addControllerMember(context);
 
         // Report attributes of this new controller to the host
         context.sendControllerArrival();
@@ -1511,26 +1536,12 @@ public class ControllerHandler implements InputManager.InputDeviceListener, UsbD
 
         // In order to properly handle controllers that are split into multiple devices,
         // we must aggregate all controllers with the same controller number into a single
-        // device before we send it.
-        for (int i = 0; i < inputDeviceContexts.size(); i++) {
-            GenericControllerContext context = inputDeviceContexts.valueAt(i);
-            if (context.assignedControllerNumber &&
-                    context.controllerNumber == controllerNumber &&
-                    context.mouseEmulationActive == originalContext.mouseEmulationActive) {
-                inputMap |= context.inputMap;
-                leftTrigger |= maxByMagnitude(leftTrigger, context.leftTrigger);
-                rightTrigger |= maxByMagnitude(rightTrigger, context.rightTrigger);
-                leftStickX |= maxByMagnitude(leftStickX, context.leftStickX);
-                leftStickY |= maxByMagnitude(leftStickY, context.leftStickY);
-                rightStickX |= maxByMagnitude(rightStickX, context.rightStickX);
-                rightStickY |= maxByMagnitude(rightStickY, context.rightStickY);
-            }
-        }
-        for (int i = 0; i < usbDeviceContexts.size(); i++) {
-            GenericControllerContext context = usbDeviceContexts.valueAt(i);
-            if (context.assignedControllerNumber &&
-                    context.controllerNumber == controllerNumber &&
-                    context.mouseEmulationActive == originalContext.mouseEmulationActive) {
+        // device before we send it. Only the devices sharing this number are visited, so this
+        // doesn't get slower as more controllers are attached.
+        ArrayList<GenericControllerContext> members = controllerMembers.get(controllerNumber);
+        for (int i = 0; members != null && i < members.size(); i++) {
+            GenericControllerContext context = members.get(i);
+            if (context.mouseEmulationActive == originalContext.mouseEmulationActive) {
                 inputMap |= context.inputMap;
                 leftTrigger |= maxByMagnitude(leftTrigger, context.leftTrigger);
                 rightTrigger |= maxByMagnitude(rightTrigger, context.rightTrigger);
@@ -1595,11 +1606,12 @@ public class ControllerHandler implements InputManager.InputDeviceListener, UsbD
                 }
             }
 
-            conn.sendControllerInput(controllerNumber, getActiveControllerMask(),
+            stateSender.send(controllerNumber, getActiveControllerMask(),
                     (short)0, (byte)0, (byte)0, (short)0, (short)0, (short)0, (short)0);
         }
         else {
-            conn.sendControllerInput(controllerNumber, getActiveControllerMask(),
+            // Identical states are dropped here, so callers don't have to check for changes
+            stateSender.send(controllerNumber, getActiveControllerMask(),
                     inputMap,
                     leftTrigger, rightTrigger,
                     leftStickX, leftStickY,
@@ -0,0 +1,158 @@
+package com.limelight.binding.input;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import com.limelight.nvstream.NvConnection;
+
+// Sends fused controller state to the host, but only when it differs from what was last sent
+// for that controller number.
+//
+// Changes to buttons or to the set of active controllers always go out immediately. If an
+// analog rate is set, changes that only move sticks or triggers are held back until a full
+// interval has passed since the last packet, and only the newest of them is sent then. A noisy
+// stick or the gyro can otherwise produce far more packets than the host will ever sample.
+//
+// Callers may be on any thread; held-back state is flushed on the given handler.
+class ControllerStateSender {
+    private static final int MAX_CONTROLLERS = 16;
+
+    private final NvConnection conn;
+    private final Handler flushHandler;
+    private final long analogIntervalMs;
+
+    private final State[] lastSent = new State[MAX_CONTROLLERS];
+    private final State[] pending = new State[MAX_CONTROLLERS];
+    private final long[] lastSendTime = new long[MAX_CONTROLLERS];
+    private final Runnable[] flushRunnables = new Runnable[MAX_CONTROLLERS];
+
+    private static final class State {
+        short activeMask;
+        int inputMap;
+        byte leftTrigger, rightTrigger;
+        short leftStickX, leftStickY;
+        short rightStickX, rightStickY;
+
+        void set(short activeMask, int inputMap, byte leftTrigger, byte rightTrigger,
+                 short leftStickX, short leftStickY, short rightStickX, short rightStickY) {
+            this.activeMask = activeMask;
+            this.inputMap = inputMap;
+            this.leftTrigger = leftTrigger;
+            this.rightTrigger = rightTrigger;
+            this.leftStickX = leftStickX;
+            this.leftStickY = leftStickY;
+            this.rightStickX = rightStickX;
+            this.rightStickY = rightStickY;
+        }
+
+        void set(State other) {
+            set(other.activeMask, other.inputMap, other.leftTrigger, other.rightTrigger,
+                    other.leftStickX, other.leftStickY, other.rightStickX, other.rightStickY);
+        }
+
+        boolean analogEquals(byte leftTrigger, byte rightTrigger,
+                             short leftStickX, short leftStickY, short rightStickX, short rightStickY) {
+            return this.leftTrigger == leftTrigger && this.rightTrigger == rightTrigger &&
+                    this.leftStickX == leftStickX && this.leftStickY == leftStickY &&
+                    this.rightStickX == rightStickX && this.rightStickY == rightStickY;
+        }
+    }
+
+    // analogRateHz of 0 disables rate limiting, so only exact duplicates are dropped
+    ControllerStateSender(NvConnection conn, Handler flushHandler, int analogRateHz) {
+        this.conn = conn;
+        this.flushHandler = flushHandler;
+        this.analogIntervalMs = analogRateHz > 0 ? Math.max(1, 1000 / analogRateHz) : 0;
+
+        for (int i = 0; i < MAX_CONTROLLERS; i++) {
+            final int controllerNumber = i;
+            flushRunnables[i] = () -> flush(controllerNumber);
+        }
+    }
+
+    public synchronized void send(short controllerNumber, short activeMask, int inputMap,
+                                  byte leftTrigger, byte rightTrigger,
+                                  short leftStickX, short leftStickY,
+                                  short rightStickX, short rightStickY) {
+        if (controllerNumber < 0 || controllerNumber >= MAX_CONTROLLERS) {
+            // Not something we track, so just pass it through
+            conn.sendControllerInput(controllerNumber, activeMask, inputMap,
+                    leftTrigger, rightTrigger, leftStickX, leftStickY, rightStickX, rightStickY);
+            return;
+        }
+
+        State last = lastSent[controllerNumber];
+        if (last != null && last.activeMask == activeMask && last.inputMap == inputMap) {
+            if (last.analogEquals(leftTrigger, rightTrigger, leftStickX, leftStickY, rightStickX, rightStickY)) {
+                // Back to what the host already has, so anything held back is moot
+                cancelPending(controllerNumber);
+                return;
+            }
+
+            long now = SystemClock.uptimeMillis();
+            long nextSendTime = lastSendTime[controllerNumber] + analogIntervalMs;
+            if (analogIntervalMs > 0 && now < nextSendTime) {
+                State state = pending[controllerNumber];
+                if (state == null) {
+                    state = pending[controllerNumber] = new State();
+                    flushHandler.postAtTime(flushRunnables[controllerNumber], nextSendTime);
+                }
+                state.set(activeMask, inputMap, leftTrigger, rightTrigger,
+                        leftStickX, leftStickY, rightStickX, rightStickY);
+                return;
+            }
+        }
+
+        // A button edge or a new controller. Whatever was held back is superseded by this.
+        cancelPending(controllerNumber);
+        if (last == null) {
+            last = lastSent[controllerNumber] = new State();
+        }
+        last.set(activeMask, inputMap, leftTrigger, rightTrigger,
+                leftStickX, leftStickY, rightStickX, rightStickY);
+        sendLocked(controllerNumber, last);
+    }
+
+    // Forget what was sent for this controller number, for when it's released. The next
+    // packet for it will be sent regardless of content.
+    public synchronized void reset(short controllerNumber) {
+        if (controllerNumber < 0 || controllerNumber >= MAX_CONTROLLERS) {
+            return;
+        }
+
+        cancelPending(controllerNumber);
+        lastSent[controllerNumber] = null;
+    }
+
+    public synchronized void cancelAll() {
+        for (short i = 0; i < MAX_CONTROLLERS; i++) {
+            cancelPending(i);
+        }
+    }
+
+    private synchronized void flush(int controllerNumber) {
+        State state = pending[controllerNumber];
+        if (state == null) {
+            return;
+        }
+
+        pending[controllerNumber] = null;
+        lastSent[controllerNumber].set(state);
+        sendLocked(controllerNumber, state);
+    }
+
+    private void cancelPending(int controllerNumber) {
+        if (pending[controllerNumber] != null) {
+            pending[controllerNumber] = null;
+            flushHandler.removeCallbacks(flushRunnables[controllerNumber]);
+        }
+    }
+
+    private void sendLocked(int controllerNumber, State state) {
+        lastSendTime[controllerNumber] = SystemClock.uptimeMillis();
+        conn.sendControllerInput((short) controllerNumber, state.activeMask, state.inputMap,
+                state.leftTrigger, state.rightTrigger,
+                state.leftStickX, state.leftStickY,
+                state.rightStickX, state.rightStickY);
+    }
+}
@@ -0,0 +1,106 @@
+package com.limelight.binding.input;
+
+import android.view.MotionEvent;
+
+// Decides which of the samples batched into a MotionEvent are forwarded to the host.
+//
+// Android delivers pointer input once per display frame, with the samples that arrived in
+// between available as history. Depending on the policy we either forward all of them in
+// order, only the newest one, or the newest one extrapolated to where the pointer will be by
+// the next frame. Callers loop over samples from getFirstSample() up to and including
+// event.getHistorySize(), which stands for the event's current values:
+//
+//     for (int s = coalescer.getFirstSample(event); s <= event.getHistorySize(); s++) {
+//         float x = coalescer.getX(event, pointerIndex, s);
+//         ...
+//     }
+public class InputCoalescer {
+    // Every sample, oldest first. Smoothest, at the cost of more packets.
+    public static final int POLICY_ALL_SAMPLES = 0;
+
+    // Just the newest sample, so at most one per display frame
+    public static final int POLICY_LATEST = 1;
+
+    // The newest sample, moved ahead along the pointer's current velocity
+    public static final int POLICY_PREDICT = 2;
+
+    // Never extrapolate further than this many times the interval we measured the velocity over
+    private static final float MAX_PREDICTION_RATIO = 2.0f;
+
+    private final int policy;
+    private final float predictionMs;
+
+    public InputCoalescer(int policy, float predictionMs) {
+        this.policy = policy;
+        this.predictionMs = predictionMs;
+    }
+
+    public int getPolicy() {
+        return policy;
+    }
+
+    public int getFirstSample(MotionEvent event) {
+        return policy == POLICY_ALL_SAMPLES ? 0 : event.getHistorySize();
+    }
+
+    public float getX(MotionEvent event, int pointerIndex, int sample) {
+        int historySize = event.getHistorySize();
+        if (sample < historySize) {
+            return event.getHistoricalX(pointerIndex, sample);
+        }
+
+        float x = event.getX(pointerIndex);
+        if (shouldPredict(event)) {
+            x = predict(event, x, event.getHistoricalX(pointerIndex, historySize - 1));
+        }
+        return x;
+    }
+
+    public float getY(MotionEvent event, int pointerIndex, int sample) {
+        int historySize = event.getHistorySize();
+        if (sample < historySize) {
+            return event.getHistoricalY(pointerIndex, sample);
+        }
+
+        float y = event.getY(pointerIndex);
+        if (shouldPredict(event)) {
+            y = predict(event, y, event.getHistoricalY(pointerIndex, historySize - 1));
+        }
+        return y;
+    }
+
+    public static float getPressure(MotionEvent event, int pointerIndex, int sample) {
+        return sample < event.getHistorySize() ?
+                event.getHistoricalPressure(pointerIndex, sample) : event.getPressure(pointerIndex);
+    }
+
+    public static float getAxisValue(MotionEvent event, int axis, int pointerIndex, int sample) {
+        return sample < event.getHistorySize() ?
+                event.getHistoricalAxisValue(axis, pointerIndex, sample) : event.getAxisValue(axis, pointerIndex);
+    }
+
+    public static long getEventTime(MotionEvent event, int sample) {
+        return sample < event.getHistorySize() ?
+                event.getHistoricalEventTime(sample) : event.getEventTime();
+    }
+
+    private boolean shouldPredict(MotionEvent event) {
+        if (policy != POLICY_PREDICT || event.getHistorySize() == 0) {
+            return false;
+        }
+
+        // Downs and ups have to land exactly where the user touched
+        int action = event.getActionMasked();
+        return action == MotionEvent.ACTION_MOVE || action == MotionEvent.ACTION_HOVER_MOVE;
+    }
+
+    private float predict(MotionEvent event, float current, float previous) {
+        long dt = event.getEventTime() - event.getHistoricalEventTime(event.getHistorySize() - 1);
+        if (dt <= 0) {
+            return current;
+        }
+
+        float ratio = Math.min(predictionMs / dt, MAX_PREDICTION_RATIO);
+        return current + (current - previous) * ratio;
+    }
+}
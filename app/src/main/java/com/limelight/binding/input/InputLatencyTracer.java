@@ -0,0 +1,197 @@
+package com.limelight.binding.input;
+
+import android.os.Build;
+import android.view.InputDevice;
+import android.view.InputEvent;
+import android.view.KeyEvent;
+import android.view.MotionEvent;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Measures how long input spends in the app, from the timestamp the system gave the event
+// until our handling of it (including the native send) has returned. Samples go into a
+// histogram per input source, which the performance overlay reads once per stats window and
+// which can be dumped as JSON at the end of a stream.
+//
+// Event timestamps use the same monotonic clock as System.nanoTime(), so the two can be
+// compared directly. Key events, and motion events before Android 14, only have millisecond
+// resolution.
+public final class InputLatencyTracer {
+    public static final int SOURCE_TOUCH = 0;
+    public static final int SOURCE_PEN = 1;
+    public static final int SOURCE_MOUSE = 2;
+    public static final int SOURCE_KEYBOARD = 3;
+    public static final int SOURCE_GAMEPAD = 4;
+    public static final int SOURCE_USB = 5;
+    public static final int SOURCE_COUNT = 6;
+
+    private static final String[] SOURCE_NAMES = { "touch", "pen", "mouse", "keyboard", "gamepad", "usb" };
+
+    // 0.25 ms buckets up to 50 ms, plus one for everything slower
+    private static final int BUCKET_US = 250;
+    private static final int BUCKETS = 200 + 1;
+
+    private static final AtomicLongArray[] histograms = new AtomicLongArray[SOURCE_COUNT];
+    static {
+        for (int i = 0; i < SOURCE_COUNT; i++) {
+            histograms[i] = new AtomicLongArray(BUCKETS);
+        }
+    }
+
+    private InputLatencyTracer() {}
+
+    public static String getSourceName(int source) {
+        return SOURCE_NAMES[source];
+    }
+
+    public static int getSource(InputEvent event) {
+        int source = event.getSource();
+        if (event instanceof KeyEvent) {
+            return (source & (InputDevice.SOURCE_GAMEPAD | InputDevice.SOURCE_DPAD | InputDevice.SOURCE_JOYSTICK)) != 0 ?
+                    SOURCE_GAMEPAD : SOURCE_KEYBOARD;
+        }
+
+        MotionEvent motionEvent = (MotionEvent) event;
+        if ((source & InputDevice.SOURCE_CLASS_JOYSTICK) != 0) {
+            return SOURCE_GAMEPAD;
+        }
+        if (motionEvent.getPointerCount() > 0) {
+            switch (motionEvent.getToolType(0)) {
+                case MotionEvent.TOOL_TYPE_STYLUS:
+                case MotionEvent.TOOL_TYPE_ERASER:
+                    return SOURCE_PEN;
+                case MotionEvent.TOOL_TYPE_FINGER:
+                    if ((source & InputDevice.SOURCE_TOUCHSCREEN) == InputDevice.SOURCE_TOUCHSCREEN) {
+                        return SOURCE_TOUCH;
+                    }
+                    break;
+            }
+        }
+        return SOURCE_MOUSE;
+    }
+
+    private static long getEventTimeNanos(InputEvent event) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE && event instanceof MotionEvent) {
+            return ((MotionEvent) event).getEventTimeNanos();
+        }
+        return event.getEventTime() * 1000000L;
+    }
+
+    // Call once the event has been handled and anything it caused has been sent
+    public static void recordEvent(InputEvent event) {
+        recordSince(getSource(event), getEventTimeNanos(event));
+    }
+
+    public static void recordSince(int source, long startNanos) {
+        long latencyUs = (System.nanoTime() - startNanos) / 1000;
+        if (latencyUs < 0) {
+            // Shouldn't happen, but don't let a bogus timestamp land in the overflow bucket
+            latencyUs = 0;
+        }
+        histograms[source].incrementAndGet((int) Math.min(latencyUs / BUCKET_US, BUCKETS - 1));
+    }
+
+    public static void reset() {
+        for (AtomicLongArray histogram : histograms) {
+            for (int i = 0; i < BUCKETS; i++) {
+                histogram.set(i, 0);
+            }
+        }
+    }
+
+    public static Snapshot snapshot() {
+        long[][] counts = new long[SOURCE_COUNT][BUCKETS];
+        for (int s = 0; s < SOURCE_COUNT; s++) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[s][i] = histograms[s].get(i);
+            }
+        }
+        return new Snapshot(counts);
+    }
+
+    public static final class Snapshot {
+        private final long[][] counts;
+
+        private Snapshot(long[][] counts) {
+            this.counts = counts;
+        }
+
+        // Just the samples recorded after the older snapshot was taken
+        public Snapshot since(Snapshot older) {
+            long[][] delta = new long[SOURCE_COUNT][BUCKETS];
+            for (int s = 0; s < SOURCE_COUNT; s++) {
+                for (int i = 0; i < BUCKETS; i++) {
+                    delta[s][i] = counts[s][i] - older.counts[s][i];
+                }
+            }
+            return new Snapshot(delta);
+        }
+
+        public long getCount(int source) {
+            long count = 0;
+            for (long bucket : counts[source]) {
+                count += bucket;
+            }
+            return count;
+        }
+
+        // Upper edge of the bucket holding the given percentile, or NaN without samples.
+        // Anything in the overflow bucket reads as the histogram's limit.
+        public float getPercentileMs(int source, float percentile) {
+            long count = getCount(source);
+            if (count == 0) {
+                return Float.NaN;
+            }
+
+            long target = (long) Math.ceil(count * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[source][i];
+                if (seen >= target) {
+                    return Math.min(i + 1, BUCKETS - 1) * BUCKET_US / 1000.0f;
+                }
+            }
+            return (BUCKETS - 1) * BUCKET_US / 1000.0f;
+        }
+
+        public String toJson() {
+            try {
+                JSONObject json = new JSONObject();
+                for (int s = 0; s < SOURCE_COUNT; s++) {
+                    long count = getCount(s);
+                    if (count == 0) {
+                        continue;
+                    }
+
+                    JSONObject source = new JSONObject();
+                    source.put("count", count);
+                    source.put("p50_ms", getPercentileMs(s, 50));
+                    source.put("p90_ms", getPercentileMs(s, 90));
+                    source.put("p99_ms", getPercentileMs(s, 99));
+                    source.put("bucket_us", BUCKET_US);
+
+                    // Only the buckets that have samples, by index
+                    JSONObject buckets = new JSONObject();
+                    for (int i = 0; i < BUCKETS; i++) {
+                        if (counts[s][i] != 0) {
+                            buckets.put(Integer.toString(i), counts[s][i]);
+                        }
+                    }
+                    source.put("buckets", buckets);
+                    json.put(SOURCE_NAMES[s], source);
+                }
+                return json.toString();
+            } catch (JSONException e) {
+                return "{}";
+            }
+        }
+
+        @Override
+        public String toString() {
+            return toJson();
+        }
+    }
+}
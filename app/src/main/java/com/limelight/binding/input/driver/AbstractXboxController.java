@@ -8,6 +8,7 @@ import android.hardware.usb.UsbInterface;
 import android.os.SystemClock;
 
 import com.limelight.LimeLog;
+import com.limelight.binding.input.InputLatencyTracer;
 import com.limelight.nvstream.input.ControllerPacket;
 import com.limelight.nvstream.jni.MoonBridge;
 
@@ -58,6 +59,7 @@ public abstract class AbstractXboxController extends AbstractController {
                     byte[] buffer = new byte[64];
 
                     int res;
+                    long readNanos;
 
                     //
                     // There's no way that I can tell to determine if a device has failed
@@ -70,6 +72,7 @@ public abstract class AbstractXboxController extends AbstractController {
                         // Read the next input state packet
                         long lastMillis = SystemClock.uptimeMillis();
                         res = connection.bulkTransfer(inEndpt, buffer, buffer.length, 3000);
+                        readNanos = System.nanoTime();
 
                         // If we get a zero length response, treat it as an error
                         if (res == 0) {
@@ -90,6 +93,9 @@ public abstract class AbstractXboxController extends AbstractController {
                     if (handleRead(ByteBuffer.wrap(buffer, 0, res).order(ByteOrder.LITTLE_ENDIAN))) {
                         // Report input if handleRead() returns true
                         reportInput();
+
+                        // Reporting sends the new state to the host before returning
+                        InputLatencyTracer.recordSince(InputLatencyTracer.SOURCE_USB, readNanos);
                     }
                 }
             }
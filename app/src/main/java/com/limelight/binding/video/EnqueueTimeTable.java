@@ -0,0 +1,95 @@
+package com.limelight.binding.video;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Maps the presentation timestamp of a queued input buffer to the time it was enqueued, so the
+// renderer thread can compute decoder latency when the matching output buffer arrives.
+//
+// This is a fixed-capacity open addressing table with bounded linear probing. It is written by the
+// input thread and read by the renderer thread without locks and never allocates after construction.
+// Only a handful of frames are ever inside the decoder at once, so when a probe window is full the
+// oldest entry is simply evicted (its latency sample will be lost).
+class EnqueueTimeTable {
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private static final int CAPACITY = 64;
+    private static final int MASK = CAPACITY - 1;
+    private static final int MAX_PROBES = 8;
+    private static final int INDEX_SHIFT = Integer.SIZE - Integer.numberOfTrailingZeros(CAPACITY);
+
+    // A slot is owned by whoever moves its key away from the expected value. The producer claims
+    // a slot by setting its key to EMPTY before writing the value and publishing the new key, and
+    // the consumer only trusts a value if it can then remove the key it read alongside it.
+    private final AtomicLongArray keys = new AtomicLongArray(CAPACITY);
+    private final long[] values = new long[CAPACITY];
+
+    EnqueueTimeTable() {
+        clear();
+    }
+
+    private static int indexFor(long timestampUs) {
+        int h = (int) (timestampUs ^ (timestampUs >>> 32));
+        return (h * 0x9E3779B9) >>> INDEX_SHIFT;
+    }
+
+    // Input thread only
+    void put(long timestampUs, long enqueueTime) {
+        int start = indexFor(timestampUs);
+        int victim = start;
+        long victimKey = Long.MAX_VALUE;
+
+        for (int i = 0; i < MAX_PROBES; i++) {
+            int index = (start + i) & MASK;
+            long key = keys.get(index);
+
+            if (key == EMPTY) {
+                victim = index;
+                victimKey = EMPTY;
+                break;
+            } else if (key < victimKey) {
+                // Remember the oldest entry in case we need to evict it
+                victim = index;
+                victimKey = key;
+            }
+        }
+
+        if (victimKey != EMPTY) {
+            // If this fails, the renderer thread consumed the entry in the meantime
+            // and the slot is already free.
+            keys.compareAndSet(victim, victimKey, EMPTY);
+        }
+
+        values[victim] = enqueueTime;
+
+        // Publish the value before the key
+        keys.lazySet(victim, timestampUs);
+    }
+
+    // Renderer thread only. Removes the entry and returns its enqueue time, or -1 if not found.
+    long remove(long timestampUs) {
+        int start = indexFor(timestampUs);
+
+        for (int i = 0; i < MAX_PROBES; i++) {
+            int index = (start + i) & MASK;
+
+            if (keys.get(index) == timestampUs) {
+                long enqueueTime = values[index];
+                if (keys.compareAndSet(index, timestampUs, EMPTY)) {
+                    return enqueueTime;
+                }
+
+                // Evicted by the input thread while we were reading it
+                return -1;
+            }
+        }
+
+        return -1;
+    }
+
+    // Must not race with put()
+    void clear() {
+        for (int i = 0; i < CAPACITY; i++) {
+            keys.set(i, EMPTY);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.limelight.binding.video;
+
+// Records per-frame latencies for each stage of the video pipeline into histograms covering
+// the current stats window and the whole session.
+//
+// Stages are recorded from different threads (input, renderer, and frame pacing), so each method
+// takes the monitor. It is uncontended nearly all the time and nothing is allocated per frame.
+class FrameLatencyRecorder {
+
+    // Network receive of the first packet to enqueue of the complete frame
+    private final LatencyHistogram windowNetwork = new LatencyHistogram();
+    private final LatencyHistogram sessionNetwork = new LatencyHistogram();
+
+    // Enqueue into the decoder to the decoded output buffer being available
+    private final LatencyHistogram windowDecode = new LatencyHistogram();
+    private final LatencyHistogram sessionDecode = new LatencyHistogram();
+
+    // Decoded output buffer available to the buffer being released for presentation
+    private final LatencyHistogram windowPresent = new LatencyHistogram();
+    private final LatencyHistogram sessionPresent = new LatencyHistogram();
+
+    synchronized void recordNetworkLatency(long latencyUs) {
+        windowNetwork.record(latencyUs);
+        sessionNetwork.record(latencyUs);
+    }
+
+    synchronized void recordDecodeLatency(long latencyUs) {
+        windowDecode.record(latencyUs);
+        sessionDecode.record(latencyUs);
+    }
+
+    synchronized void recordPresentLatency(long latencyUs) {
+        windowPresent.record(latencyUs);
+        sessionPresent.record(latencyUs);
+    }
+
+    // Copies the percentiles of the current window and the session into the PerformanceInfo,
+    // then starts a new window.
+    synchronized void flipWindow(PerformanceInfo performanceInfo) {
+        performanceInfo.networkLatency = LatencyPercentiles.from(windowNetwork);
+        performanceInfo.decodeLatency = LatencyPercentiles.from(windowDecode);
+        performanceInfo.presentLatency = LatencyPercentiles.from(windowPresent);
+        performanceInfo.sessionNetworkLatency = LatencyPercentiles.from(sessionNetwork);
+        performanceInfo.sessionDecodeLatency = LatencyPercentiles.from(sessionDecode);
+        performanceInfo.sessionPresentLatency = LatencyPercentiles.from(sessionPresent);
+
+        windowNetwork.clear();
+        windowDecode.clear();
+        windowPresent.clear();
+    }
+
+    synchronized LatencyPercentiles getSessionNetworkLatency() {
+        return LatencyPercentiles.from(sessionNetwork);
+    }
+
+    synchronized LatencyPercentiles getSessionDecodeLatency() {
+        return LatencyPercentiles.from(sessionDecode);
+    }
+
+    synchronized LatencyPercentiles getSessionPresentLatency() {
+        return LatencyPercentiles.from(sessionPresent);
+    }
+}
@@ -0,0 +1,64 @@
+package com.limelight.binding.video;
+
+import java.util.concurrent.locks.LockSupport;
+
+// Waits until a deadline by parking for most of the interval and busy-waiting only for the last
+// stretch. The length of that stretch is learned from how late parkNanos() actually wakes us up on
+// this device, so precise timing is kept without spinning for a large part of every frame.
+class FramePacingScheduler {
+    private static final long MIN_SPIN_NS = 50000; // 50 us
+    private static final long MAX_SPIN_NS = 2000000; // 2 ms
+
+    // Smoothing factor for the estimates is 1/8
+    private static final int EWMA_SHIFT = 3;
+
+    // Exponentially weighted mean and mean deviation of the park overshoot
+    private long wakeupLatencyNs = 200000;
+    private long wakeupDeviationNs = 100000;
+
+    long getSpinMarginNs() {
+        long marginNs = wakeupLatencyNs + 2 * wakeupDeviationNs;
+        return Math.max(MIN_SPIN_NS, Math.min(MAX_SPIN_NS, marginNs));
+    }
+
+    long getWakeupLatencyNs() {
+        return wakeupLatencyNs;
+    }
+
+    private void updateEstimate(long overshootNs) {
+        long error = overshootNs - wakeupLatencyNs;
+        wakeupLatencyNs += error >> EWMA_SHIFT;
+        wakeupDeviationNs += (Math.abs(error) - wakeupDeviationNs) >> EWMA_SHIFT;
+    }
+
+    // Returns once System.nanoTime() has reached deadlineNs or the thread is interrupted
+    void sleepUntil(long deadlineNs) {
+        long now = System.nanoTime();
+
+        for (;;) {
+            long parkNs = deadlineNs - now - getSpinMarginNs();
+            if (parkNs <= 0) {
+                break;
+            }
+
+            long expectedWakeNs = now + parkNs;
+            LockSupport.parkNanos(parkNs);
+            now = System.nanoTime();
+
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+
+            // Early returns (spurious wakeups or a stale unpark permit) just park again
+            // and tell us nothing about the wakeup latency.
+            if (now >= expectedWakeNs) {
+                updateEstimate(now - expectedWakeNs);
+            }
+        }
+
+        // Spin for the residual
+        while (now < deadlineNs) {
+            now = System.nanoTime();
+        }
+    }
+}
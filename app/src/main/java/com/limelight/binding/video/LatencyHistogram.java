@@ -0,0 +1,94 @@
+package com.limelight.binding.video;
+
+// A fixed-size log-linear histogram of latencies in microseconds, in the spirit of HdrHistogram.
+//
+// Values below 32 us get their own bucket. Above that, each power of two is split into 16 linear
+// sub-buckets, which bounds the relative error of any reported percentile to about 6%. Values
+// above MAX_VALUE_US are clamped into the last bucket. Recording never allocates.
+class LatencyHistogram {
+    static final long MAX_VALUE_US = (1L << 24) - 1; // ~16.7 seconds
+
+    private static final int LINEAR_BUCKETS = 32;
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = bucketIndex(MAX_VALUE_US) + 1;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount;
+    private long maxValueUs;
+
+    private static int bucketIndex(long valueUs) {
+        if (valueUs < LINEAR_BUCKETS) {
+            return (int) valueUs;
+        }
+
+        // Shift so that the top bits of the value land in [SUB_BUCKETS, 2 * SUB_BUCKETS)
+        int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(valueUs)) - SUB_BUCKET_BITS;
+        int subBucket = (int) (valueUs >>> shift) - SUB_BUCKETS;
+        return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    // Returns the largest value that maps to the given bucket
+    private static long highestValueInBucket(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+
+        int shift = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+        long subBucket = (index - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    void record(long valueUs) {
+        if (valueUs < 0) {
+            return;
+        } else if (valueUs > MAX_VALUE_US) {
+            valueUs = MAX_VALUE_US;
+        }
+
+        counts[bucketIndex(valueUs)]++;
+        totalCount++;
+        if (valueUs > maxValueUs) {
+            maxValueUs = valueUs;
+        }
+    }
+
+    void clear() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = 0;
+        }
+        totalCount = 0;
+        maxValueUs = 0;
+    }
+
+    long getTotalCount() {
+        return totalCount;
+    }
+
+    long getMaxValueUs() {
+        return maxValueUs;
+    }
+
+    // Returns the value at or below which the given percentage of samples fall
+    long getValueAtPercentileUs(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        long countAtPercentile = (long) Math.ceil(percentile / 100.0 * totalCount);
+        if (countAtPercentile < 1) {
+            countAtPercentile = 1;
+        }
+
+        long runningCount = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            runningCount += counts[i];
+            if (runningCount >= countAtPercentile) {
+                // Never report more than we actually saw
+                return Math.min(highestValueInBucket(i), maxValueUs);
+            }
+        }
+
+        return maxValueUs;
+    }
+}
@@ -0,0 +1,32 @@
+package com.limelight.binding.video;
+
+import android.annotation.SuppressLint;
+
+import androidx.annotation.NonNull;
+
+// Latency distribution for one stage of the video pipeline, in milliseconds
+public class LatencyPercentiles {
+
+    public long sampleCount;
+    public float p50Ms;
+    public float p95Ms;
+    public float p99Ms;
+    public float maxMs;
+
+    static LatencyPercentiles from(LatencyHistogram histogram) {
+        LatencyPercentiles percentiles = new LatencyPercentiles();
+        percentiles.sampleCount = histogram.getTotalCount();
+        percentiles.p50Ms = histogram.getValueAtPercentileUs(50) / 1000f;
+        percentiles.p95Ms = histogram.getValueAtPercentileUs(95) / 1000f;
+        percentiles.p99Ms = histogram.getValueAtPercentileUs(99) / 1000f;
+        percentiles.maxMs = histogram.getMaxValueUs() / 1000f;
+        return percentiles;
+    }
+
+    @SuppressLint("DefaultLocale")
+    @NonNull
+    @Override
+    public String toString() {
+        return String.format("p50 %.1f / p95 %.1f / p99 %.1f / max %.1f ms", p50Ms, p95Ms, p99Ms, maxMs);
+    }
+}
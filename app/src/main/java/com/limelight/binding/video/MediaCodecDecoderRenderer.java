@@ -5,13 +5,9 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.LockSupport;
 
 import org.jcodec.codecs.h264.H264Utils;
 import org.jcodec.codecs.h264.io.model.SeqParameterSet;
@@ -19,9 +15,12 @@ import org.jcodec.codecs.h264.io.model.VUIParameters;
 
 import com.limelight.BuildConfig;
 import com.limelight.LimeLog;
+import com.limelight.binding.audio.AvSyncMonitor;
 import com.limelight.nvstream.av.video.VideoDecoderRenderer;
 import com.limelight.nvstream.jni.MoonBridge;
 import com.limelight.preferences.PreferenceConfiguration;
+import com.limelight.utils.DiagnosticsRegistry;
+import com.limelight.utils.StripedCounter;
 
 import android.annotation.SuppressLint;
 import android.annotation.TargetApi;
@@ -64,6 +63,14 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
     private int nextInputBufferIndex = -1;
     private ByteBuffer nextInputBuffer;
 
+    // Returned by prepareDecodeUnit() when nextInputBuffer is ready to receive picture data
+    private static final int DU_READY_FOR_DATA = 1;
+    private long pendingTimestampUs;
+    private int pendingCodecFlags;
+
+    // Status of a frame that beginDirectDecodeUnit() didn't accept, or DU_READY_FOR_DATA if none
+    private int rejectedDirectDecodeUnitStatus = DU_READY_FOR_DATA;
+
 
     private Context context;
     private Activity activity;
@@ -123,12 +130,24 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
     private int refreshRate;
     private PreferenceConfiguration prefs;
 
-    // Map to track enqueue time for each timestamp
+    // Tracks enqueue time for each timestamp
     // Key: timestamp in microseconds (from enqueueTimeUs)
-    // Value: enqueue time in milliseconds (from SystemClock.uptimeMillis())
-    private final Map<Long, Long> timestampToEnqueueTime = new HashMap<>();
+    // Value: enqueue time in nanoseconds (from System.nanoTime())
+    private final EnqueueTimeTable timestampToEnqueueTime = new EnqueueTimeTable();
+
+    private static final StripedCounter framesDroppedFromQueue = DiagnosticsRegistry.counter("video.frames_dropped_from_queue");
+
+    // Per-frame latency histograms for each pipeline stage
+    private final FrameLatencyRecorder frameLatencyRecorder = new FrameLatencyRecorder();
+
+    // Fed with our video latency estimate once per stats window
+    private AvSyncMonitor avSyncMonitor;
 
-    private LinkedBlockingQueue<Integer> outputBufferQueue = new LinkedBlockingQueue<>();
+    // Time each output buffer index was dequeued, used to measure how long it waits to be released.
+    // Written by the renderer thread before the index is handed to the frame pacing thread.
+    private final long[] outputBufferDequeueTimesNs = new long[64];
+
+    private final OutputBufferQueue outputBufferQueue;
     private long lastRenderedFrameTimeNanos;
     private HandlerThread choreographerHandlerThread;
     private Handler choreographerHandler;
@@ -144,6 +163,32 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
     // 高精度帧率控制
     private long surfaceFlingerTargetTime; // 目标渲染时间（绝对时间）
     private long surfaceFlingerTimingError; // 累积时间误差
+    private final FramePacingScheduler surfaceFlingerScheduler = new FramePacingScheduler();
+
+    // 由 Choreographer 提供的真实 Vsync 时间线
+    private VsyncTracker vsyncTracker;
+    private HandlerThread vsyncHandlerThread;
+    private Handler vsyncHandler;
+    private final Choreographer.FrameCallback vsyncFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (stopping) {
+                return;
+            }
+
+            // frameTimeNanos is offset from the hardware vsync by the app vsync offset
+            vsyncTracker.onVsync(frameTimeNanos - vsyncAppOffsetNs);
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    };
+    private long vsyncAppOffsetNs;
+
+    // 提前于 presentation deadline 释放缓冲区的余量，吸收线程调度抖动
+    private static final long SURFACE_FLINGER_RELEASE_MARGIN_NS = 1000000;
+
+    // 超过这个时间没有新帧时，停止按帧唤醒，改为等待解码器交付新帧
+    private static final long SURFACE_FLINGER_IDLE_THRESHOLD_NS = 500000000L;
+    private static final long SURFACE_FLINGER_IDLE_PARK_NS = 100000000L;
 
     /**
      * 安全地设置线程优先级
@@ -329,6 +374,10 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
         this.renderTarget = renderTarget;
     }
 
+    public void setAvSyncMonitor(AvSyncMonitor avSyncMonitor) {
+        this.avSyncMonitor = avSyncMonitor;
+    }
+
     public MediaCodecDecoderRenderer(Activity activity, PreferenceConfiguration prefs,
                                      CrashListener crashListener, int consecutiveCrashCount,
                                      boolean meteredData, boolean requestedHdr,
@@ -342,6 +391,7 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
         this.consecutiveCrashCount = consecutiveCrashCount;
         this.glRenderer = glRenderer;
         this.perfListener = perfListener;
+        this.outputBufferQueue = new OutputBufferQueue(prefs.outputBufferQueueLimit);
 
         this.activeWindowVideoStats = new VideoStats();
         this.lastWindowVideoStats = new VideoStats();
@@ -1018,8 +1068,8 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
             // NB: The queue limit is configurable via preferences, which prevents starving
             // the decoder of output buffers by holding onto them for too long. This also ensures
             // we will have that extra frame of buffer to smooth over network/rendering jitter.
-            Integer nextOutputBuffer = outputBufferQueue.poll();
-            if (nextOutputBuffer != null) {
+            int nextOutputBuffer = outputBufferQueue.poll();
+            if (nextOutputBuffer != OutputBufferQueue.EMPTY) {
                 if (prefs.framePacing == PreferenceConfiguration.FRAME_PACING_EXPERIMENTAL_LOW_LATENCY) {
                     // 实验性低延迟模式：进一步优化V-Sync处理
                     // 安全的提前量：不超过V-Sync周期的1/2
@@ -1027,6 +1077,7 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
                 }
                 try {
                     videoDecoder.releaseOutputBuffer(nextOutputBuffer, frameTimeNanos);
+                    recordOutputBufferReleased(nextOutputBuffer);
 
                     lastRenderedFrameTimeNanos = frameTimeNanos;
                     activeWindowVideoStats.totalFramesRendered++;
@@ -1069,6 +1120,52 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
         choreographerHandler.post(() -> Choreographer.getInstance().postFrameCallback(MediaCodecDecoderRenderer.this));
     }
 
+    private void startVsyncThread() {
+        if (prefs.framePacing != PreferenceConfiguration.FRAME_PACING_PRECISE_SYNC) {
+            return;
+        }
+
+        float displayRefreshRate = 60.0f;
+        try {
+            displayRefreshRate = activity.getWindowManager().getDefaultDisplay().getRefreshRate();
+            vsyncAppOffsetNs = activity.getWindowManager().getDefaultDisplay().getAppVsyncOffsetNanos();
+        } catch (Exception e) {
+            LimeLog.warning("无法获取显示刷新率: " + e.getMessage());
+        }
+
+        vsyncTracker = new VsyncTracker((long) (1000000000.0 / displayRefreshRate));
+
+        // This thread only observes vsync timestamps, it never touches the codec
+        vsyncHandlerThread = new HandlerThread("Video - Vsync", Process.THREAD_PRIORITY_DISPLAY);
+        vsyncHandlerThread.start();
+
+        vsyncHandler = new Handler(vsyncHandlerThread.getLooper());
+        vsyncHandler.post(() -> {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
+                postVsyncCallback();
+            } else {
+                Choreographer.getInstance().postFrameCallback(vsyncFrameCallback);
+            }
+        });
+    }
+
+    @TargetApi(Build.VERSION_CODES.TIRAMISU)
+    private void postVsyncCallback() {
+        Choreographer.getInstance().postVsyncCallback(new Choreographer.VsyncCallback() {
+            @Override
+            public void onVsync(@NonNull Choreographer.FrameData data) {
+                if (stopping) {
+                    return;
+                }
+
+                // This is when a buffer queued now is expected to be displayed, which is the
+                // same timeline the releaseOutputBuffer() timestamp refers to.
+                vsyncTracker.onVsync(data.getPreferredFrameTimeline().getExpectedPresentationTimeNanos());
+                Choreographer.getInstance().postVsyncCallback(this);
+            }
+        });
+    }
+
     private void startSurfaceFlingerThread() {
         if (prefs.framePacing != PreferenceConfiguration.FRAME_PACING_PRECISE_SYNC) {
             return;
@@ -1121,15 +1218,29 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
     private void runSurfaceFlingerLoop(long vsyncOffsetNs, long presentationDeadlineNs) {
         while (surfaceFlingerActive && !stopping) {
             try {
-                long currentTime = System.nanoTime();
+                if (outputBufferQueue.isEmpty() &&
+                        System.nanoTime() - surfaceFlingerLastFrameTime > SURFACE_FLINGER_IDLE_THRESHOLD_NS) {
+                    // The stream has been idle for a while, so don't wake up every vsync
+                    // just to find nothing to render. Sleep until a frame is handed off.
+                    if (!outputBufferQueue.awaitNotEmpty(System.nanoTime() + SURFACE_FLINGER_IDLE_PARK_NS)) {
+                        continue;
+                    }
 
+                    // Render this frame right away and resume pacing from here
+                    surfaceFlingerTargetTime = System.nanoTime();
+                } else {
+                    // Sleep until a frame is handed off or the target time arrives, then
+                    // wait out the rest of the interval with only a short final spin.
+                    outputBufferQueue.awaitNotEmpty(surfaceFlingerTargetTime);
+                    surfaceFlingerScheduler.sleepUntil(surfaceFlingerTargetTime);
+                }
+
+                long currentTime = System.nanoTime();
                 if (currentTime >= surfaceFlingerTargetTime) {
                     renderNextFrame(currentTime, vsyncOffsetNs, presentationDeadlineNs);
-                    updateTargetTime(currentTime);
+                    updateTargetTime(currentTime, presentationDeadlineNs);
                 }
 
-                waitForNextFrame();
-
             } catch (Exception e) {
                 LimeLog.warning("Surface Flinger线程异常: " + e.getMessage());
                 e.printStackTrace();
@@ -1139,8 +1250,8 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
 
     @SuppressLint("DefaultLocale")
     private void renderNextFrame(long currentTime, long vsyncOffsetNs, long presentationDeadlineNs) {
-        Integer nextOutputBuffer = outputBufferQueue.poll();
-        if (nextOutputBuffer == null) {
+        int nextOutputBuffer = outputBufferQueue.poll();
+        if (nextOutputBuffer == OutputBufferQueue.EMPTY) {
             surfaceFlingerSkippedFrames++;
             return;
         }
@@ -1148,6 +1259,7 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
         try {
             long presentationTimeNs = calculatePresentationTime(currentTime, vsyncOffsetNs, presentationDeadlineNs);
             videoDecoder.releaseOutputBuffer(nextOutputBuffer, presentationTimeNs);
+            recordOutputBufferReleased(nextOutputBuffer);
 
             updateTimingStats(currentTime);
 
@@ -1158,6 +1270,12 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
     }
 
     private long calculatePresentationTime(long currentTime, long vsyncOffsetNs, long presentationDeadlineNs) {
+        if (vsyncTracker.isLocked()) {
+            // Target the first real vsync we can still make. Its presentation deadline
+            // can't have passed, so there's no need for the immediate render fallback.
+            return vsyncTracker.getNextVsyncNs(currentTime + presentationDeadlineNs);
+        }
+
         if (vsyncOffsetNs == 0) {
             return 0;
         }
@@ -1201,14 +1319,29 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
 
         if (surfaceFlingerFrameCount % 100 == 0) {
             float avgError = surfaceFlingerTimingError / 1000000.0f / surfaceFlingerFrameCount;
-            LimeLog.info(String.format("精确同步: %d帧, 跳帧: %d, 平均误差: %.3fms",
-                    surfaceFlingerFrameCount, surfaceFlingerSkippedFrames, avgError));
+            LimeLog.info(String.format("精确同步: %d帧, 跳帧: %d, 平均误差: %.3fms, 唤醒延迟: %.3fms, 自旋余量: %.3fms",
+                    surfaceFlingerFrameCount, surfaceFlingerSkippedFrames, avgError,
+                    surfaceFlingerScheduler.getWakeupLatencyNs() / 1000000.0f,
+                    surfaceFlingerScheduler.getSpinMarginNs() / 1000000.0f));
         }
     }
 
-    private void updateTargetTime(long currentTime) {
+    private void updateTargetTime(long currentTime, long presentationDeadlineNs) {
+        long lastTargetTime = surfaceFlingerTargetTime;
         surfaceFlingerTargetTime += surfaceFlingerFrameInterval;
 
+        if (vsyncTracker.isLocked()) {
+            // Snap the target onto the real vsync timeline, just ahead of the deadline of the
+            // vsync it's meant for. The stream frame interval still decides which vsyncs we use,
+            // but the phase now follows the display instead of free-running off nanoTime().
+            long releaseLeadNs = presentationDeadlineNs + SURFACE_FLINGER_RELEASE_MARGIN_NS;
+            surfaceFlingerTargetTime = vsyncTracker.getNearestVsyncNs(surfaceFlingerTargetTime + releaseLeadNs) - releaseLeadNs;
+            if (surfaceFlingerTargetTime <= lastTargetTime) {
+                // Stream is faster than the display, so use every vsync
+                surfaceFlingerTargetTime = vsyncTracker.getNextVsyncNs(lastTargetTime + releaseLeadNs + 1) - releaseLeadNs;
+            }
+        }
+
         long timeDrift = Math.abs(currentTime - surfaceFlingerTargetTime);
         if (timeDrift > surfaceFlingerFrameInterval * 2) {
             LimeLog.warning("精确同步: 时间漂移过大 (" + (timeDrift / 1000000) + "ms)，重新同步");
@@ -1217,25 +1350,6 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
         }
     }
 
-    private void waitForNextFrame() {
-        long sleepTimeNs = surfaceFlingerTargetTime - System.nanoTime();
-
-        if (sleepTimeNs <= 0) {
-            return;
-        }
-
-        // 使用 LockSupport.parkNanos() 进行高效等待，提前唤醒以进行精确调整
-        if (sleepTimeNs > 1000000) { // > 1ms
-            LockSupport.parkNanos(sleepTimeNs - 500000); // 提前 0.5ms 醒来
-        } else if (sleepTimeNs > 100000) { // > 0.1ms
-            LockSupport.parkNanos(sleepTimeNs >> 1); // 等待一半时间
-        }
-
-        // 等待最后部分
-        while (System.nanoTime() < surfaceFlingerTargetTime) {
-        }
-    }
-
     private void startRendererThread() {
         rendererThread = new Thread() {
             @Override
@@ -1246,6 +1360,8 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
                         // Try to output a frame
                         int outIndex = videoDecoder.dequeueOutputBuffer(info, 50000);
                         if (outIndex >= 0) {
+                            recordOutputBufferDequeued(outIndex);
+
                             long presentationTimeUs = info.presentationTimeUs;
                             int lastIndex = outIndex;
 
@@ -1257,6 +1373,7 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
                                     prefs.framePacing != PreferenceConfiguration.FRAME_PACING_PRECISE_SYNC) {
                                 // Get the last output buffer in the queue
                                 while ((outIndex = videoDecoder.dequeueOutputBuffer(info, 0)) >= 0) {
+                                    recordOutputBufferDequeued(outIndex);
                                     videoDecoder.releaseOutputBuffer(lastIndex, false);
 
                                     numFramesOut++;
@@ -1276,37 +1393,37 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
                                     videoDecoder.releaseOutputBuffer(lastIndex, System.nanoTime());
                                 }
 
+                                recordOutputBufferReleased(lastIndex);
                                 activeWindowVideoStats.totalFramesRendered++;
                             } else {
                                 // For balanced frame pacing, experimental low latency, and Surface Flinger modes
                                 // The respective callback threads will handle rendering.
                                 // We just put all frames into the output buffer queue and let them handle things.
 
-                                // Discard the oldest buffer if we've exceeded our limit.
+                                // Add this buffer, discarding the oldest buffer if we've exceeded our limit.
                                 //
-                                // NB: We have to do this on the producer side because the consumer may not
+                                // NB: The queue does this on the producer side because the consumer may not
                                 // run for a while (if there is a huge mismatch between stream FPS and display
                                 // refresh rate).
-                                if (outputBufferQueue.size() == prefs.outputBufferQueueLimit) {
-                                    try {
-                                        videoDecoder.releaseOutputBuffer(outputBufferQueue.take(), false);
-                                    } catch (InterruptedException e) {
-                                        // We're shutting down, so we can just drop this buffer on the floor
-                                        // and it will be reclaimed when the codec is released.
-                                        return;
-                                    }
+                                int droppedIndex = outputBufferQueue.offer(lastIndex);
+                                if (droppedIndex != OutputBufferQueue.EMPTY) {
+                                    videoDecoder.releaseOutputBuffer(droppedIndex, false);
+                                    framesDroppedFromQueue.increment();
                                 }
-
-                                // Add this buffer
-                                outputBufferQueue.add(lastIndex);
                             }
 
-                            // Add delta time to the totals (excluding probable outliers)
-                            long delta = calculateDecoderTime(presentationTimeUs);
-                            if (delta >= 0 && delta < 1000) {
-                                activeWindowVideoStats.decoderTimeMs += delta;
-                                if (!USE_FRAME_RENDER_TIME) {
-                                    activeWindowVideoStats.totalTimeMs += delta;
+                            long deltaUs = calculateDecoderTimeUs(presentationTimeUs);
+                            if (deltaUs >= 0) {
+                                // Stalls belong in the histogram's tail, which clamps them
+                                frameLatencyRecorder.recordDecodeLatency(deltaUs);
+
+                                // Add delta time to the totals (excluding probable outliers)
+                                if (deltaUs < 1000000) {
+                                    long delta = deltaUs / 1000;
+                                    activeWindowVideoStats.decoderTimeMs += delta;
+                                    if (!USE_FRAME_RENDER_TIME) {
+                                        activeWindowVideoStats.totalTimeMs += delta;
+                                    }
                                 }
                             }
                         } else {
@@ -1405,6 +1522,7 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
     public void start() {
         startRendererThread();
         startChoreographerThread();
+        startVsyncThread();
         startSurfaceFlingerThread();
     }
 
@@ -1443,6 +1561,11 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
                 Choreographer.getInstance().removeFrameCallback(MediaCodecDecoderRenderer.this);
             });
         }
+
+        // The vsync callbacks stop reposting themselves once stopping is set
+        if (vsyncHandlerThread != null) {
+            vsyncHandlerThread.quit();
+        }
     }
 
     @Override
@@ -1464,6 +1587,20 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
             }
         }
 
+        // Wait for the vsync looper to shut down (if we have one)
+        if (vsyncHandlerThread != null) {
+            try {
+                vsyncHandlerThread.join();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+
+                // InterruptedException clears the thread's interrupt status. Since we can't
+                // handle that here, we will re-interrupt the thread to set the interrupt
+                // status back to true.
+                Thread.currentThread().interrupt();
+            }
+        }
+
         // Wait for the Surface Flinger thread to shut down
         if (surfaceFlingerThread != null) {
             try {
@@ -1558,8 +1695,11 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
         boolean codecRecovered;
 
         try {
-            // Record the enqueue time for this timestamp
-            timestampToEnqueueTime.put(timestampUs, SystemClock.uptimeMillis());
+            // Record the enqueue time for this timestamp. Codec config buffers never
+            // produce output buffers, so there is nothing to track for them.
+            if ((codecFlags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) == 0) {
+                timestampToEnqueueTime.put(timestampUs, System.nanoTime());
+            }
 
             videoDecoder.queueInputBuffer(nextInputBufferIndex,
                     0, nextInputBuffer.position(),
@@ -1616,11 +1756,85 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
         }
     }
 
-    @SuppressWarnings("deprecation")
     @Override
     public int submitDecodeUnit(byte[] decodeUnitData, int decodeUnitLength, int decodeUnitType,
                                 int frameNumber, int frameType, char frameHostProcessingLatency,
                                 long receiveTimeUs, long enqueueTimeUs) {
+        int ret = prepareDecodeUnit(decodeUnitData, decodeUnitLength, decodeUnitType,
+                frameNumber, frameType, frameHostProcessingLatency, receiveTimeUs, enqueueTimeUs);
+        if (ret != DU_READY_FOR_DATA) {
+            return ret;
+        }
+
+        // Copy data from our buffer list into the input buffer
+        nextInputBuffer.put(decodeUnitData, 0, decodeUnitLength);
+
+        return queuePendingDecodeUnit();
+    }
+
+    @Override
+    public boolean supportsDirectDecodeUnitBuffers() {
+        // MediaCodec input buffers obtained via getInputBuffer() are always direct
+        return true;
+    }
+
+    @Override
+    public ByteBuffer beginDirectDecodeUnit(int decodeUnitLength, int frameNumber, int frameType,
+                                            char frameHostProcessingLatency, long receiveTimeUs, long enqueueTimeUs) {
+        int ret = prepareDecodeUnit(null, decodeUnitLength, MoonBridge.BUFFER_TYPE_PICDATA,
+                frameNumber, frameType, frameHostProcessingLatency, receiveTimeUs, enqueueTimeUs);
+        if (ret != DU_READY_FOR_DATA) {
+            // Handed back by commitDirectDecodeUnit(), so we return what submitDecodeUnit() would
+            // (like DR_OK while stopping, rather than asking for an IDR frame)
+            rejectedDirectDecodeUnitStatus = ret;
+            return null;
+        }
+
+        // The native code will write the picture data starting at the current position
+        return nextInputBuffer;
+    }
+
+    @Override
+    public int commitDirectDecodeUnit(int decodeUnitLength) {
+        if (rejectedDirectDecodeUnitStatus != DU_READY_FOR_DATA) {
+            // beginDirectDecodeUnit() didn't take this frame
+            int ret = rejectedDirectDecodeUnitStatus;
+            rejectedDirectDecodeUnitStatus = DU_READY_FOR_DATA;
+            return ret;
+        }
+
+        if (nextInputBuffer == null) {
+            // Codec recovery may have invalidated our buffer in the meantime
+            return MoonBridge.DR_NEED_IDR;
+        }
+
+        if (decodeUnitLength < 0) {
+            // The native code couldn't write into our buffer. Drop any CSD we may have
+            // put into it and keep the buffer around for the next frame.
+            nextInputBuffer.clear();
+            return MoonBridge.DR_NEED_IDR;
+        }
+
+        nextInputBuffer.position(nextInputBuffer.position() + decodeUnitLength);
+
+        return queuePendingDecodeUnit();
+    }
+
+    private int queuePendingDecodeUnit() {
+        if (!queueNextInputBuffer(pendingTimestampUs, pendingCodecFlags)) {
+            return MoonBridge.DR_NEED_IDR;
+        }
+
+        return MoonBridge.DR_OK;
+    }
+
+    // Performs all per-frame bookkeeping and fetches an input buffer with enough room for the
+    // picture data. Returns DU_READY_FOR_DATA if the caller must now write decodeUnitLength bytes
+    // into nextInputBuffer and call queuePendingDecodeUnit(), otherwise a DR_* status to return.
+    @SuppressWarnings("deprecation")
+    private int prepareDecodeUnit(byte[] decodeUnitData, int decodeUnitLength, int decodeUnitType,
+                                  int frameNumber, int frameType, char frameHostProcessingLatency,
+                                  long receiveTimeUs, long enqueueTimeUs) {
         if (stopping) {
             // Don't bother if we're stopping
             return MoonBridge.DR_OK;
@@ -1698,6 +1912,21 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
             performanceInfo.renderingLatencyMs = avePureRenderingLatencyMs;
             performanceInfo.totalTimeMs = aveTotalProcessingTimeMs;
 
+            frameLatencyRecorder.flipWindow(performanceInfo);
+
+            if (avSyncMonitor != null) {
+                if (performanceInfo.presentLatency.sampleCount > 0) {
+                    // Typical time from receiving a frame until it's released for display, plus
+                    // roughly one refresh interval for composition and scanout
+                    avSyncMonitor.onVideoLatency(performanceInfo.networkLatency.p50Ms +
+                            performanceInfo.decodeLatency.p50Ms +
+                            performanceInfo.presentLatency.p50Ms +
+                            1000.0f / refreshRate);
+                }
+                performanceInfo.avSyncSkewMs = avSyncMonitor.getSkewMs();
+                performanceInfo.avSyncAudioDelayMs = avSyncMonitor.getAppliedAudioDelayMs();
+            }
+
             perfListener.onPerfUpdateV(performanceInfo);
             perfListener.onPerfUpdateWG(performanceInfo);
 
@@ -1930,6 +2159,7 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
             // receiveTimeUs and enqueueTimeUs are in microseconds, convert to milliseconds
             activeWindowVideoStats.totalTimeMs += (enqueueTimeUs - receiveTimeUs) / 1000;
         }
+        frameLatencyRecorder.recordNetworkLatency(enqueueTimeUs - receiveTimeUs);
 
         if (!fetchNextInputBuffer()) {
             return MoonBridge.DR_NEED_IDR;
@@ -1974,14 +2204,9 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
             throw new RendererException(this, exception);
         }
 
-        // Copy data from our buffer list into the input buffer
-        nextInputBuffer.put(decodeUnitData, 0, decodeUnitLength);
-
-        if (!queueNextInputBuffer(timestampUs, codecFlags)) {
-            return MoonBridge.DR_NEED_IDR;
-        }
-
-        return MoonBridge.DR_OK;
+        pendingTimestampUs = timestampUs;
+        pendingCodecFlags = codecFlags;
+        return DU_READY_FOR_DATA;
     }
 
     private boolean replaySps() {
@@ -2203,7 +2428,9 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
             str += "Frame losses: " + renderer.globalVideoStats.framesLost + " in " + renderer.globalVideoStats.frameLossEvents + " loss events" + DELIMITER;
             str += "Average end-to-end client latency: " + renderer.getAverageEndToEndLatency() + "ms" + DELIMITER;
             str += "Average hardware decoder latency: " + renderer.getAverageDecoderLatency() + "ms" + DELIMITER;
+            str += "Decoder latency distribution: " + renderer.frameLatencyRecorder.getSessionDecodeLatency() + DELIMITER;
             str += "Frame pacing mode: " + renderer.prefs.framePacing + DELIMITER;
+            str += "Diagnostics: " + DiagnosticsRegistry.snapshot().toJson() + DELIMITER;
 
             if (originalException instanceof CodecException) {
                 CodecException ce = (CodecException) originalException;
@@ -2225,15 +2452,41 @@ public class MediaCodecDecoderRenderer extends VideoDecoderRenderer implements C
 
     // Calculate decoder time using the enqueue time we recorded
     // presentationTimeUs: presentation timestamp in microseconds (from MediaCodec)
-    // Returns: decoder time in milliseconds
-    private long calculateDecoderTime(long presentationTimeUs) {
-        // Look up the enqueue time for this timestamp (stored in milliseconds)
-        Long enqueueTimeMs = timestampToEnqueueTime.remove(presentationTimeUs);
-        if (enqueueTimeMs != null) {
-            long delta = SystemClock.uptimeMillis() - enqueueTimeMs;
-            return delta > 0 && delta < 1000 ? delta : 0;
-        }
-        // If we can't find the enqueue time, return 0
-        return 0;
+    // Returns: decoder time in microseconds, or -1 if unknown
+    private long calculateDecoderTimeUs(long presentationTimeUs) {
+        // Look up the enqueue time for this timestamp (stored in nanoseconds)
+        long enqueueTimeNs = timestampToEnqueueTime.remove(presentationTimeUs);
+        if (enqueueTimeNs >= 0) {
+            long deltaUs = (System.nanoTime() - enqueueTimeNs) / 1000;
+            return deltaUs >= 0 ? deltaUs : -1;
+        }
+        // If we can't find the enqueue time, don't count this frame
+        return -1;
+    }
+
+    // Renderer thread only
+    private void recordOutputBufferDequeued(int bufferIndex) {
+        if (bufferIndex < outputBufferDequeueTimesNs.length) {
+            outputBufferDequeueTimesNs[bufferIndex] = System.nanoTime();
+        }
+    }
+
+    // Called by whichever thread releases the buffer for rendering
+    private void recordOutputBufferReleased(int bufferIndex) {
+        if (bufferIndex < outputBufferDequeueTimesNs.length && outputBufferDequeueTimesNs[bufferIndex] != 0) {
+            frameLatencyRecorder.recordPresentLatency((System.nanoTime() - outputBufferDequeueTimesNs[bufferIndex]) / 1000);
+        }
+    }
+
+    @SuppressLint("DefaultLocale")
+    public String getFrameLatencyStats() {
+        if (globalVideoStats.totalFramesReceived == 0) {
+            return null;
+        }
+
+        return String.format("[网络 %s]\n[解码 %s]\n[呈现 %s]",
+                frameLatencyRecorder.getSessionNetworkLatency(),
+                frameLatencyRecorder.getSessionDecodeLatency(),
+                frameLatencyRecorder.getSessionPresentLatency());
     }
 }
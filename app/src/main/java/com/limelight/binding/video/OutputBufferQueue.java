@@ -0,0 +1,120 @@
+package com.limelight.binding.video;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// A bounded queue of MediaCodec output buffer indices handed from the renderer thread to the
+// frame pacing thread (Choreographer or precise sync). There is a single producer and a single
+// consumer, so this can be done without locks or boxing.
+//
+// When the queue is full, the producer evicts the oldest entry itself. This must happen on the
+// producer side because the consumer may not run for a while if there is a large mismatch between
+// stream FPS and display refresh rate. Since both sides may then remove entries, the head index
+// is advanced with a CAS while the tail is only ever written by the producer.
+class OutputBufferQueue {
+    static final int EMPTY = -1;
+
+    private final int[] slots;
+    private final int mask;
+    private final int limit;
+
+    // Monotonically increasing positions, so a stale head can never be mistaken for a current one
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    // Consumer thread parked in awaitNotEmpty(), if any
+    private volatile Thread waiter;
+
+    OutputBufferQueue(int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Queue limit must be positive: " + limit);
+        }
+
+        int capacity = Integer.highestOneBit(limit);
+        if (capacity < limit) {
+            capacity <<= 1;
+        }
+
+        this.slots = new int[capacity];
+        this.mask = capacity - 1;
+        this.limit = limit;
+    }
+
+    // Producer only. Adds the buffer index and returns the index of the oldest buffer if it had
+    // to be evicted to stay within the limit (which the caller must release), or EMPTY.
+    int offer(int bufferIndex) {
+        int evicted = EMPTY;
+        long t = tail.get();
+
+        if (t - head.get() >= limit) {
+            evicted = poll();
+        }
+
+        slots[(int) (t & mask)] = bufferIndex;
+
+        // Publish the slot contents before the new tail. This must be a full volatile write so
+        // it can't be reordered with our read of the waiter below.
+        tail.set(t + 1);
+
+        Thread w = waiter;
+        if (w != null) {
+            LockSupport.unpark(w);
+        }
+
+        return evicted;
+    }
+
+    // Consumer only. Parks until a buffer is available or the deadline (in System.nanoTime()
+    // terms) passes. Returns true if the queue is non-empty.
+    boolean awaitNotEmpty(long deadlineNs) {
+        if (!isEmpty()) {
+            return true;
+        }
+
+        waiter = Thread.currentThread();
+        try {
+            while (isEmpty()) {
+                long remainingNs = deadlineNs - System.nanoTime();
+                if (remainingNs <= 0 || Thread.currentThread().isInterrupted()) {
+                    return false;
+                }
+
+                LockSupport.parkNanos(this, remainingNs);
+            }
+
+            return true;
+        } finally {
+            waiter = null;
+        }
+    }
+
+    // Returns the oldest buffer index or EMPTY if there is none
+    int poll() {
+        for (;;) {
+            long h = head.get();
+            if (h >= tail.get()) {
+                return EMPTY;
+            }
+
+            // The slot can't be reused until head moves past it, so if our CAS succeeds
+            // the value we read is still the one that belongs to this position.
+            int bufferIndex = slots[(int) (h & mask)];
+            if (head.compareAndSet(h, h + 1)) {
+                return bufferIndex;
+            }
+        }
+    }
+
+    int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    // Must only be called while both the producer and consumer are quiesced
+    void clear() {
+        head.set(tail.get());
+    }
+}
@@ -22,4 +22,16 @@ public class PerformanceInfo {
     public String bandWidth;
     public boolean isHdrActive; // 实际HDR激活状态
     public float renderingLatencyMs; // 渲染时间
+
+    // Per-frame latency distributions for this window and for the whole session
+    public LatencyPercentiles networkLatency;
+    public LatencyPercentiles decodeLatency;
+    public LatencyPercentiles presentLatency;
+    public LatencyPercentiles sessionNetworkLatency;
+    public LatencyPercentiles sessionDecodeLatency;
+    public LatencyPercentiles sessionPresentLatency;
+
+    // Video minus audio output latency (positive means audio is early), NaN if not measured
+    public float avSyncSkewMs = Float.NaN;
+    public int avSyncAudioDelayMs;
 }
@@ -0,0 +1,107 @@
+package com.limelight.binding.video;
+
+// A phase-locked estimate of the display's vsync timeline, fed with real vsync timestamps from
+// Choreographer. Callbacks can be skipped or delivered late, so each timestamp only nudges the
+// predicted phase and period (a second-order PLL) instead of replacing them. Errors that are too
+// large to be jitter and keep happening (like after a refresh rate switch or on VRR panels changing
+// their rate) make the tracker re-acquire from the observed vsync spacing.
+//
+// Written by the vsync callback thread and read by the frame pacing thread.
+class VsyncTracker {
+    // Loop gains of 1/8 for phase and 1/64 for period
+    private static final int PHASE_GAIN_SHIFT = 3;
+    private static final int PERIOD_GAIN_SHIFT = 6;
+
+    // Number of consistent samples before predictions are trusted
+    private static final int LOCK_SAMPLES = 8;
+
+    // Outliers count double and good samples pay one back, so the timeline is only considered to
+    // have changed if more than a third of recent samples miss. Ticks landing between our predicted
+    // vsyncs (locked to a multiple of the real period) trip this just like a rate change does.
+    private static final int OUTLIER_SCORE_LIMIT = 8;
+
+    // Plausible display refresh rates are 24 Hz to 500 Hz
+    private static final long MIN_PERIOD_NS = 2000000;
+    private static final long MAX_PERIOD_NS = 42000000;
+
+    private long periodNs;
+    private long phaseNs; // Estimated time of the most recent vsync
+    private long lastVsyncNs;
+    private int lockedSamples;
+    private int outlierScore;
+
+    VsyncTracker(long nominalPeriodNs) {
+        this.periodNs = clampPeriod(nominalPeriodNs);
+    }
+
+    private static long clampPeriod(long periodNs) {
+        return Math.max(MIN_PERIOD_NS, Math.min(MAX_PERIOD_NS, periodNs));
+    }
+
+    private void acquire(long vsyncNs, long periodNs) {
+        this.phaseNs = vsyncNs;
+        this.periodNs = clampPeriod(periodNs);
+        this.lockedSamples = 0;
+        this.outlierScore = 0;
+    }
+
+    synchronized void onVsync(long vsyncNs) {
+        if (lastVsyncNs == 0) {
+            acquire(vsyncNs, periodNs);
+            lastVsyncNs = vsyncNs;
+            return;
+        } else if (vsyncNs <= lastVsyncNs) {
+            // Duplicate or out of order
+            return;
+        }
+
+        long sinceLastNs = vsyncNs - lastVsyncNs;
+        lastVsyncNs = vsyncNs;
+
+        // Skipped callbacks mean more than one period may have elapsed
+        long elapsedPeriods = Math.round((double) (vsyncNs - phaseNs) / periodNs);
+        long predictedNs = phaseNs + elapsedPeriods * periodNs;
+        long errorNs = vsyncNs - predictedNs;
+
+        if (elapsedPeriods < 1 || Math.abs(errorNs) > periodNs / 8) {
+            outlierScore += 2;
+            if (outlierScore >= OUTLIER_SCORE_LIMIT) {
+                // Start over from the spacing we're actually seeing now
+                acquire(vsyncNs, sinceLastNs);
+            }
+            return;
+        }
+
+        if (outlierScore > 0) {
+            outlierScore--;
+        }
+        phaseNs = predictedNs + (errorNs >> PHASE_GAIN_SHIFT);
+        periodNs = clampPeriod(periodNs + ((errorNs / elapsedPeriods) >> PERIOD_GAIN_SHIFT));
+        if (lockedSamples < LOCK_SAMPLES) {
+            lockedSamples++;
+        }
+    }
+
+    synchronized boolean isLocked() {
+        return lockedSamples >= LOCK_SAMPLES;
+    }
+
+    synchronized long getPeriodNs() {
+        return periodNs;
+    }
+
+    // Returns the first predicted vsync at or after the given time
+    synchronized long getNextVsyncNs(long timeNs) {
+        long deltaNs = timeNs - phaseNs;
+        long periods = deltaNs / periodNs;
+        if (periods * periodNs < deltaNs) {
+            periods++;
+        }
+        return phaseNs + periods * periodNs;
+    }
+
+    // Returns the predicted vsync closest to the given time
+    synchronized long getNearestVsyncNs(long timeNs) {
+        return phaseNs + Math.round((double) (timeNs - phaseNs) / periodNs) * periodNs;
+    }
+}
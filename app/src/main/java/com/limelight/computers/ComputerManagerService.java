@@ -5,10 +5,18 @@ import java.io.OutputStream;
 import java.io.StringReader;
 import java.net.Inet4Address;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
 import java.net.UnknownHostException;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -44,7 +52,14 @@ import android.os.SystemClock;
 import org.xmlpull.v1.XmlPullParserException;
 
 public class ComputerManagerService extends Service {
-    private static final int SERVERINFO_POLLING_PERIOD_MS = 1500;
+    // Online hosts get a cheap TCP probe at this interval, and a full serverinfo request
+    // only when the probe fails or their serverinfo is older than SERVERINFO_TTL_MS.
+    // Offline hosts are probed with exponential back-off up to OFFLINE_PROBE_MAX_MS.
+    private static final int REACHABILITY_PROBE_PERIOD_MS = 1500;
+    private static final int SERVERINFO_TTL_MS = 15000;
+    private static final int OFFLINE_PROBE_MAX_MS = 30000;
+    private static final int PROBE_CONNECT_TIMEOUT_MS = 1000;
+    private static final int REACHABILITY_THREADS = 3;
     private static final int APPLIST_POLLING_PERIOD_MS = 30000;
     private static final int APPLIST_FAILED_POLLING_RETRY_MS = 2000;
     private static final int MDNS_QUERY_PERIOD_MS = 1000;
@@ -63,7 +78,8 @@ public class ComputerManagerService extends Service {
     private final LinkedList<PollingTuple> pollingTuples = new LinkedList<>();
     private ComputerManagerListener listener = null;
     private final AtomicInteger activePolls = new AtomicInteger(0);
-    private boolean pollingActive = false;
+    private volatile boolean pollingActive = false;
+    private volatile ScheduledExecutorService reachabilityExecutor;
     private final Lock defaultNetworkLock = new ReentrantLock();
 
     private ConnectivityManager.NetworkCallback networkCallback;
@@ -163,41 +179,151 @@ public class ComputerManagerService extends Service {
         return true;
     }
 
-    private Thread createPollingThread(final PollingTuple tuple) {
-        Thread t = new Thread() {
-            @Override
-            public void run() {
-                int offlineCount = 0;
-                while (!isInterrupted() && pollingActive && tuple.thread == this) {
-                    try {
-                        // Only allow one request to the machine at a time
-                        synchronized (tuple.networkLock) {
-                            // Check if this poll has modified the details
-                            if (!runPoll(tuple.computer, false, offlineCount)) {
-                                LimeLog.warning(tuple.computer.name + " is offline (try " + offlineCount + ")");
-                                offlineCount++;
-                            } else {
-                                tuple.lastSuccessfulPollMs = SystemClock.elapsedRealtime();
-                                offlineCount = 0;
-                            }
-                        }
+    private static boolean probeAddress(ComputerDetails.AddressTuple address) {
+        if (address == null) {
+            return false;
+        }
 
-                        // Wait until the next polling interval
-                        Thread.sleep(SERVERINFO_POLLING_PERIOD_MS);
-                    } catch (InterruptedException e) {
-                        break;
+        // A TCP handshake with the HTTP port is enough to tell if the host is up,
+        // without the TLS handshake and XML of a full serverinfo request.
+        try (Socket s = new Socket()) {
+            s.connect(new InetSocketAddress(address.address, address.port), PROBE_CONNECT_TIMEOUT_MS);
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static boolean probeAnyAddress(ComputerDetails details) {
+        HashSet<ComputerDetails.AddressTuple> uniqueAddresses = new HashSet<>();
+        for (ComputerDetails.AddressTuple address : new ComputerDetails.AddressTuple[] {
+                details.localAddress, details.manualAddress, details.remoteAddress, details.ipv6Address}) {
+            if (address != null && uniqueAddresses.add(address) && probeAddress(address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Schedules the next reachability check for this host, replacing any pending one.
+    // Callers must hold the tuple's monitor.
+    private void scheduleReachabilityCheck(final PollingTuple tuple, long delayMs) {
+        ScheduledExecutorService executor = reachabilityExecutor;
+        if (!pollingActive || tuple.removed || executor == null) {
+            return;
+        }
+
+        if (tuple.pendingCheck != null) {
+            tuple.pendingCheck.cancel(false);
+        }
+        try {
+            tuple.pendingCheck = executor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    runReachabilityCheck(tuple);
+                }
+            }, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Polling was stopped while we were checking this host
+            tuple.pendingCheck = null;
+        }
+    }
+
+    // Checks the host right away, such as after it announced itself over mDNS or we joined
+    // a new network. Any back-off is reset and serverinfo is always fetched.
+    private void requestImmediatePoll(PollingTuple tuple) {
+        synchronized (tuple) {
+            tuple.offlineBackoffMs = 0;
+            tuple.fullPollRequested = true;
+
+            // A running check will pick up the request when it reschedules itself
+            if (!tuple.checkInProgress) {
+                scheduleReachabilityCheck(tuple, 0);
+            }
+        }
+    }
+
+    private void runReachabilityCheck(PollingTuple tuple) {
+        boolean fullPoll;
+        synchronized (tuple) {
+            if (!pollingActive || tuple.removed || tuple.checkInProgress) {
+                return;
+            }
+            tuple.checkInProgress = true;
+            fullPoll = tuple.fullPollRequested;
+            tuple.fullPollRequested = false;
+        }
+
+        ComputerDetails details = tuple.computer;
+        try {
+            if (!fullPoll) {
+                if (tuple.offlineCount > 0 || details.state == ComputerDetails.State.UNKNOWN) {
+                    // Still confirming whether it went offline, or we don't know anything yet
+                    fullPoll = true;
+                }
+                else if (details.state == ComputerDetails.State.ONLINE) {
+                    if (SystemClock.elapsedRealtime() - tuple.lastSuccessfulPollMs >= SERVERINFO_TTL_MS) {
+                        fullPoll = true;
+                    }
+                    else if (!probeAddress(details.activeAddress)) {
+                        LimeLog.info(details.name + " failed reachability probe");
+                        fullPoll = true;
+                    }
+                }
+                else {
+                    // Only bother with serverinfo once something is listening again
+                    fullPoll = probeAnyAddress(details);
+                }
+            }
+
+            if (fullPoll) {
+                // Only allow one request to the machine at a time
+                synchronized (tuple.networkLock) {
+                    // Check if this poll has modified the details
+                    if (!runPoll(details, false, tuple.offlineCount)) {
+                        LimeLog.warning(details.name + " is offline (try " + tuple.offlineCount + ")");
+                        tuple.offlineCount++;
+                    } else {
+                        tuple.lastSuccessfulPollMs = SystemClock.elapsedRealtime();
+                        tuple.offlineCount = 0;
                     }
                 }
             }
-        };
-        t.setName("Polling thread for " + tuple.computer.name);
-        return t;
+        } catch (InterruptedException e) {
+            // Polling was stopped
+            synchronized (tuple) {
+                tuple.checkInProgress = false;
+            }
+            return;
+        }
+
+        synchronized (tuple) {
+            tuple.checkInProgress = false;
+
+            long delayMs;
+            if (tuple.fullPollRequested) {
+                delayMs = 0;
+            }
+            else if (details.state == ComputerDetails.State.OFFLINE && tuple.offlineCount == 0) {
+                tuple.offlineBackoffMs = tuple.offlineBackoffMs == 0 ? REACHABILITY_PROBE_PERIOD_MS :
+                        Math.min(tuple.offlineBackoffMs * 2, OFFLINE_PROBE_MAX_MS);
+                delayMs = tuple.offlineBackoffMs;
+            }
+            else {
+                tuple.offlineBackoffMs = 0;
+                delayMs = REACHABILITY_PROBE_PERIOD_MS;
+            }
+            scheduleReachabilityCheck(tuple, delayMs);
+        }
     }
 
     public class ComputerManagerBinder extends Binder {
         public void startPolling(ComputerManagerListener listener) {
             // Polling is active
             pollingActive = true;
+            if (reachabilityExecutor == null) {
+                reachabilityExecutor = createReachabilityExecutor();
+            }
 
             // Set the listener
             ComputerManagerService.this.listener = listener;
@@ -216,11 +342,8 @@ public class ComputerManagerService extends Service {
                     // Report this computer initially
                     listener.notifyComputerUpdated(tuple.computer);
 
-                    // This polling thread might already be there
-                    if (tuple.thread == null) {
-                        tuple.thread = createPollingThread(tuple);
-                        tuple.thread.start();
-                    }
+                    // Refresh everything now that someone is looking
+                    requestImmediatePoll(tuple);
                 }
             }
         }
@@ -299,6 +422,7 @@ public class ComputerManagerService extends Service {
                         synchronized (tuple.networkLock) {
                             tuple.computer.state = ComputerDetails.State.UNKNOWN;
                         }
+                        requestImmediatePoll(tuple);
                     }
                 }
             }
@@ -314,14 +438,10 @@ public class ComputerManagerService extends Service {
 
         // Stop polling
         pollingActive = false;
-        synchronized (pollingTuples) {
-            for (PollingTuple tuple : pollingTuples) {
-                if (tuple.thread != null) {
-                    // Interrupt and remove the thread
-                    tuple.thread.interrupt();
-                    tuple.thread = null;
-                }
-            }
+        if (reachabilityExecutor != null) {
+            // Interrupts any poll in progress and drops the scheduled checks
+            reachabilityExecutor.shutdownNow();
+            reachabilityExecutor = null;
         }
 
         // Remove the listener
@@ -330,6 +450,23 @@ public class ComputerManagerService extends Service {
         return false;
     }
 
+    private static ScheduledExecutorService createReachabilityExecutor() {
+        // One scheduler drives the checks for every host. A few threads allow a slow
+        // serverinfo request to one host without holding up probes to the others.
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(REACHABILITY_THREADS, new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r);
+                t.setName("Reachability thread " + threadCount.incrementAndGet());
+                return t;
+            }
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
     private void populateExternalAddress(ComputerDetails details) {
         PreferenceConfiguration prefConfig = PreferenceConfiguration.readPreferences(this);
         if (!prefConfig.enableStun) {
@@ -445,10 +582,13 @@ public class ComputerManagerService extends Service {
                     // Update the saved computer with potentially new details
                     tuple.computer.update(details);
 
-                    // Start a polling thread if polling is active
-                    if (pollingActive && tuple.thread == null) {
-                        tuple.thread = createPollingThread(tuple);
-                        tuple.thread.start();
+                    // We just heard from it, so check it again soon rather than
+                    // waiting out any offline back-off
+                    synchronized (tuple) {
+                        tuple.offlineBackoffMs = 0;
+                        if (!tuple.checkInProgress) {
+                            scheduleReachabilityCheck(tuple, 0);
+                        }
                     }
 
                     // Found an entry so we're done
@@ -457,13 +597,10 @@ public class ComputerManagerService extends Service {
             }
 
             // If we got here, we didn't find an entry
-            PollingTuple tuple = new PollingTuple(details, null);
-            if (pollingActive) {
-                tuple.thread = createPollingThread(tuple);
-            }
+            PollingTuple tuple = new PollingTuple(details);
             pollingTuples.add(tuple);
-            if (tuple.thread != null) {
-                tuple.thread.start();
+            synchronized (tuple) {
+                scheduleReachabilityCheck(tuple, 0);
             }
         }
     }
@@ -493,7 +630,7 @@ public class ComputerManagerService extends Service {
         if (fakeDetails.state == ComputerDetails.State.ONLINE) {
             LimeLog.info("New PC (" + fakeDetails.name + ") is UUID " + fakeDetails.uuid);
 
-            // Start a polling thread for this machine
+            // Start reachability checks for this machine
             addTuple(fakeDetails);
             return true;
         }
@@ -512,10 +649,13 @@ public class ComputerManagerService extends Service {
             // Remove the computer from the computer list
             for (PollingTuple tuple : pollingTuples) {
                 if (tuple.computer.uuid.equals(computer.uuid)) {
-                    if (tuple.thread != null) {
-                        // Interrupt the thread on this entry
-                        tuple.thread.interrupt();
-                        tuple.thread = null;
+                    synchronized (tuple) {
+                        // Stop checking this entry
+                        tuple.removed = true;
+                        if (tuple.pendingCheck != null) {
+                            tuple.pendingCheck.cancel(true);
+                            tuple.pendingCheck = null;
+                        }
                     }
                     pollingTuples.remove(tuple);
                     break;
@@ -785,6 +925,7 @@ public class ComputerManagerService extends Service {
                             if (listener != null) {
                                 listener.notifyComputerUpdated(tuple.computer);
                             }
+                            requestImmediatePoll(tuple);
                         }
                     }
                 }
@@ -985,14 +1126,22 @@ public class ComputerManagerService extends Service {
 }
 
 class PollingTuple {
-    public Thread thread;
     public final ComputerDetails computer;
     public final Object networkLock;
     public long lastSuccessfulPollMs;
 
-    public PollingTuple(ComputerDetails computer, Thread thread) {
+    // Reachability scheduling state, guarded by the tuple's monitor
+    public ScheduledFuture<?> pendingCheck;
+    public boolean checkInProgress;
+    public boolean fullPollRequested;
+    public boolean removed;
+    public long offlineBackoffMs;
+
+    // Only touched by the check in progress
+    public int offlineCount;
+
+    public PollingTuple(ComputerDetails computer) {
         this.computer = computer;
-        this.thread = thread;
         this.networkLock = new Object();
     }
 }
@@ -0,0 +1,183 @@
+package com.limelight.nvstream;
+
+import com.limelight.LimeLog;
+import com.limelight.nvstream.jni.MoonBridge;
+
+/**
+ * 自适应码率控制器
+ *
+ * Fed once per stats window (roughly every second) with frame loss and RTT, and also looks at how
+ * much video and audio is queued locally. Any sign of congestion steps the bitrate down quickly,
+ * while it's only raised again in small steps after a sustained clean period. Each failed attempt
+ * to raise it doubles the clean period required before the next one, so we don't keep oscillating
+ * around the link capacity. The user's chosen bitrate is always the ceiling.
+ */
+public class AdaptiveBitrateController {
+    // Congestion thresholds
+    private static final float LOSS_PERCENT_THRESHOLD = 2.0f;
+    private static final int PENDING_VIDEO_FRAMES_THRESHOLD = 3;
+    private static final int PENDING_AUDIO_MS_THRESHOLD = 60;
+    private static final int RTT_INCREASE_THRESHOLD_MS = 20;
+
+    // The RTT baseline is the lowest RTT over this many recent windows, so a single unusually
+    // low sample ages out instead of making every later window look congested
+    private static final int RTT_BASELINE_WINDOWS = 30;
+
+    // RTT only counts as congestion once it has stayed above the baseline this long
+    private static final int RTT_ELEVATED_WINDOWS = 3;
+
+    // Step sizes
+    private static final float DECREASE_FACTOR = 0.7f;
+    private static final float INCREASE_FACTOR = 1.1f;
+    private static final int MIN_STEP_KBPS = 500;
+    private static final int MIN_BITRATE_KBPS = 1000;
+
+    // Hysteresis, in stats windows
+    private static final int DECREASE_HOLD_WINDOWS = 2;
+    private static final int INITIAL_CLEAN_WINDOWS = 10;
+    private static final int MAX_CLEAN_WINDOWS = 80;
+
+    private final NvConnection conn;
+
+    private int maxBitrateKbps;
+    private int currentBitrateKbps;
+    private boolean requestPending;
+    private int requestGeneration;
+
+    private final int[] recentRttMs = new int[RTT_BASELINE_WINDOWS];
+    private int recentRttCount;
+    private int recentRttIndex;
+    private int rttElevatedWindows;
+    private int windowsSinceChange;
+    private int cleanWindows;
+    private int requiredCleanWindows = INITIAL_CLEAN_WINDOWS;
+    private boolean lastChangeWasIncrease;
+
+    AdaptiveBitrateController(NvConnection conn, int maxBitrateKbps) {
+        this.conn = conn;
+        this.maxBitrateKbps = maxBitrateKbps;
+        this.currentBitrateKbps = maxBitrateKbps;
+    }
+
+    /**
+     * 用户手动调整码率后调用，新码率成为上限
+     */
+    public synchronized void setMaxBitrateKbps(int bitrateKbps) {
+        maxBitrateKbps = bitrateKbps;
+        currentBitrateKbps = bitrateKbps;
+        requestGeneration++;
+        windowsSinceChange = 0;
+        cleanWindows = 0;
+        requiredCleanWindows = INITIAL_CLEAN_WINDOWS;
+        lastChangeWasIncrease = false;
+    }
+
+    public synchronized int getCurrentBitrateKbps() {
+        return currentBitrateKbps;
+    }
+
+    /**
+     * @param lostFramePercent percentage of frames lost in the last stats window
+     * @param rttInfo RTT in the top 32 bits and variance in the bottom 32 bits, as from
+     *                {@link MoonBridge#getEstimatedRttInfo()}
+     */
+    public synchronized void onStatsWindow(float lostFramePercent, long rttInfo) {
+        windowsSinceChange++;
+
+        int rttMs = (int) (rttInfo >> 32);
+        if (rttMs > 0) {
+            // Compare against the baseline from before this sample, then add it
+            int baselineRttMs = getBaselineRttMs();
+            if (baselineRttMs > 0 && rttMs > baselineRttMs + RTT_INCREASE_THRESHOLD_MS) {
+                rttElevatedWindows++;
+            } else {
+                rttElevatedWindows = 0;
+            }
+
+            recentRttMs[recentRttIndex] = rttMs;
+            recentRttIndex = (recentRttIndex + 1) % RTT_BASELINE_WINDOWS;
+            recentRttCount = Math.min(recentRttCount + 1, RTT_BASELINE_WINDOWS);
+        }
+
+        boolean congested = lostFramePercent > LOSS_PERCENT_THRESHOLD ||
+                MoonBridge.getPendingVideoFrames() >= PENDING_VIDEO_FRAMES_THRESHOLD ||
+                MoonBridge.getPendingAudioDuration() > PENDING_AUDIO_MS_THRESHOLD ||
+                rttElevatedWindows >= RTT_ELEVATED_WINDOWS;
+
+        if (requestPending) {
+            return;
+        }
+
+        if (congested) {
+            cleanWindows = 0;
+
+            if (lastChangeWasIncrease && windowsSinceChange <= requiredCleanWindows) {
+                // The last probe upwards didn't hold, so wait longer before the next one
+                requiredCleanWindows = Math.min(requiredCleanWindows * 2, MAX_CLEAN_WINDOWS);
+                lastChangeWasIncrease = false;
+            }
+
+            if (windowsSinceChange >= DECREASE_HOLD_WINDOWS) {
+                requestBitrate((int) (currentBitrateKbps * DECREASE_FACTOR), false);
+            }
+        } else if (++cleanWindows >= requiredCleanWindows && currentBitrateKbps < maxBitrateKbps) {
+            requestBitrate((int) (currentBitrateKbps * INCREASE_FACTOR), true);
+        }
+    }
+
+    // Lowest RTT over the recent windows, or 0 if we don't have any yet
+    private int getBaselineRttMs() {
+        int baselineRttMs = 0;
+        for (int i = 0; i < recentRttCount; i++) {
+            if (baselineRttMs == 0 || recentRttMs[i] < baselineRttMs) {
+                baselineRttMs = recentRttMs[i];
+            }
+        }
+        return baselineRttMs;
+    }
+
+    private void requestBitrate(int bitrateKbps, boolean increase) {
+        // Always move by at least one step, but never outside of our range
+        if (increase) {
+            bitrateKbps = Math.max(bitrateKbps, currentBitrateKbps + MIN_STEP_KBPS);
+        } else {
+            bitrateKbps = Math.min(bitrateKbps, currentBitrateKbps - MIN_STEP_KBPS);
+        }
+        bitrateKbps = Math.max(Math.min(MIN_BITRATE_KBPS, maxBitrateKbps), Math.min(maxBitrateKbps, bitrateKbps));
+        if (bitrateKbps == currentBitrateKbps) {
+            return;
+        }
+
+        LimeLog.info("自适应码率: " + currentBitrateKbps + " -> " + bitrateKbps + " kbps");
+
+        final int previousBitrateKbps = currentBitrateKbps;
+        final int generation = ++requestGeneration;
+        requestPending = true;
+        currentBitrateKbps = bitrateKbps;
+        windowsSinceChange = 0;
+        cleanWindows = 0;
+        lastChangeWasIncrease = increase;
+
+        conn.requestAdaptiveBitrate(bitrateKbps, new NvConnection.BitrateAdjustmentCallback() {
+            @Override
+            public void onSuccess(int newBitrate) {
+                synchronized (AdaptiveBitrateController.this) {
+                    requestPending = false;
+                }
+            }
+
+            @Override
+            public void onFailure(String errorMessage) {
+                LimeLog.warning("自适应码率调整失败: " + errorMessage);
+                synchronized (AdaptiveBitrateController.this) {
+                    requestPending = false;
+
+                    // Roll back unless a manual change has replaced our target in the meantime
+                    if (generation == requestGeneration) {
+                        currentBitrateKbps = previousBitrateKbps;
+                    }
+                }
+            }
+        });
+    }
+}
@@ -37,6 +37,7 @@ import com.limelight.nvstream.http.NvApp;
 import com.limelight.nvstream.http.NvHTTP;
 import com.limelight.nvstream.http.PairingManager;
 import com.limelight.nvstream.input.MouseButtonPacket;
+import com.limelight.nvstream.input.TouchFrame;
 import com.limelight.nvstream.jni.MoonBridge;
 
 public class NvConnection {
@@ -49,6 +50,7 @@ public class NvConnection {
     private final boolean isMonkey;
     private final Context appContext;
     private ComputerDetails.AddressTuple host;
+    private volatile AdaptiveBitrateController adaptiveBitrateController;
 
     public NvConnection(Context appContext, ComputerDetails.AddressTuple host, int httpsPort, String uniqueId, String pairName, StreamConfiguration config, LimelightCryptoProvider cryptoProvider, X509Certificate serverCert)
     {
@@ -623,6 +625,16 @@ public class NvConnection {
         }
     }
 
+    public int sendTouchFrame(byte eventType, TouchFrame frame) {
+        if (!isMonkey) {
+            return MoonBridge.sendTouchFrame(eventType, frame.getCount(), frame.pointerIds, frame.x, frame.y,
+                    frame.pressureOrDistance, frame.contactAreaMajor, frame.contactAreaMinor, frame.rotation);
+        }
+        else {
+            return MoonBridge.LI_ERR_UNSUPPORTED;
+        }
+    }
+
     public int sendPenEvent(byte eventType, byte toolType, byte penButtons, float x, float y,
                             float pressureOrDistance, float contactAreaMajor, float contactAreaMinor,
                             short rotation, byte tilt) {
@@ -719,6 +731,25 @@ public class NvConnection {
      * @param callback 回调接口，用于通知结果
      */
     public void setBitrate(int bitrateKbps, BitrateAdjustmentCallback callback) throws IOException, XmlPullParserException {
+        sendBitrateRequest(bitrateKbps, callback, true);
+    }
+
+    /**
+     * 启用自适应码率，以当前码率作为上限
+     * @return 需要定期喂入统计数据的控制器
+     */
+    public synchronized AdaptiveBitrateController startAdaptiveBitrate() {
+        if (adaptiveBitrateController == null) {
+            adaptiveBitrateController = new AdaptiveBitrateController(this, context.streamConfig.getBitrate());
+        }
+        return adaptiveBitrateController;
+    }
+
+    void requestAdaptiveBitrate(int bitrateKbps, BitrateAdjustmentCallback callback) {
+        sendBitrateRequest(bitrateKbps, callback, false);
+    }
+
+    private void sendBitrateRequest(int bitrateKbps, BitrateAdjustmentCallback callback, boolean userRequested) {
         new Thread(() -> {
             NvHTTP h;
             try {
@@ -739,6 +770,12 @@ public class NvConnection {
                     // 更新本地配置
                     context.streamConfig.setBitrate(bitrateKbps);
                     LimeLog.info("Bitrate adjustment successful, updated local config to " + bitrateKbps + " kbps");
+
+                    // A manual change becomes the new ceiling for adaptive bitrate
+                    AdaptiveBitrateController abr = adaptiveBitrateController;
+                    if (userRequested && abr != null) {
+                        abr.setMaxBitrateKbps(bitrateKbps);
+                    }
                     if (callback != null) {
                         callback.onSuccess(bitrateKbps);
                     }
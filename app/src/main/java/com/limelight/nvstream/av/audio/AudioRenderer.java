@@ -2,6 +2,8 @@ package com.limelight.nvstream.av.audio;
 
 import com.limelight.nvstream.jni.MoonBridge;
 
+import java.nio.ByteBuffer;
+
 public interface AudioRenderer {
     int setup(MoonBridge.AudioConfiguration audioConfiguration, int sampleRate, int samplesPerFrame);
 
@@ -10,6 +12,10 @@ public interface AudioRenderer {
     void stop();
     
     void playDecodedAudio(short[] audioData);
+
+    // Called with native-endian 16-bit PCM that the native code decoded straight into a direct
+    // buffer. The buffer is reused for the next packet, so it must be consumed before returning.
+    void playDecodedAudio(ByteBuffer audioData, int sampleCount);
     
     void cleanup();
 }
@@ -1,5 +1,9 @@
 package com.limelight.nvstream.av.video;
 
+import com.limelight.nvstream.jni.MoonBridge;
+
+import java.nio.ByteBuffer;
+
 public abstract class VideoDecoderRenderer {
     public abstract int setup(int format, int width, int height, int redrawRate);
 
@@ -13,6 +17,28 @@ public abstract class VideoDecoderRenderer {
                                          int frameNumber, int frameType, char frameHostProcessingLatency,
                                          long receiveTimeUs, long enqueueTimeUs);
     
+    // Renderers that can hand a direct ByteBuffer (such as a MediaCodec input buffer) to the native
+    // code may return true here. Picture data will then be written by the native code straight into
+    // the buffer returned by beginDirectDecodeUnit() rather than being copied through a byte array.
+    // Parameter set NALUs are still delivered through submitDecodeUnit().
+    public boolean supportsDirectDecodeUnitBuffers() {
+        return false;
+    }
+
+    // Returns a direct ByteBuffer positioned where decodeUnitLength bytes of picture data should be
+    // written, or null if the frame won't be accepted. Either way, commitDirectDecodeUnit() is
+    // called next; after a null return its length is negative and its result is the frame's status.
+    public ByteBuffer beginDirectDecodeUnit(int decodeUnitLength, int frameNumber, int frameType,
+                                           char frameHostProcessingLatency, long receiveTimeUs, long enqueueTimeUs) {
+        return null;
+    }
+
+    // Called after the native code has written decodeUnitLength bytes into the buffer returned by
+    // beginDirectDecodeUnit(). A negative length means the frame was abandoned or not accepted.
+    public int commitDirectDecodeUnit(int decodeUnitLength) {
+        return MoonBridge.DR_NEED_IDR;
+    }
+
     public abstract void cleanup();
 
     public abstract int getCapabilities();
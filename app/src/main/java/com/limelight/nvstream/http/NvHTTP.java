@@ -10,16 +10,6 @@ import java.io.Reader;
 import java.io.StringReader;
 import java.net.Inet4Address;
 import java.net.InetAddress;
-import java.net.Proxy;
-import java.net.Socket;
-import java.security.KeyManagementException;
-import java.security.KeyStore;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
-import java.security.Principal;
-import java.security.PrivateKey;
-import java.security.SecureRandom;
-import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
@@ -29,28 +19,16 @@ import java.util.ListIterator;
 import java.util.Objects;
 import java.util.Stack;
 import java.util.UUID;
-import java.util.concurrent.TimeUnit;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import javax.net.ssl.HostnameVerifier;
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.KeyManager;
-import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLHandshakeException;
-import javax.net.ssl.SSLPeerUnverifiedException;
-import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.TrustManagerFactory;
-import javax.net.ssl.X509KeyManager;
-import javax.net.ssl.X509TrustManager;
 
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
-import org.xmlpull.v1.XmlPullParserFactory;
 
 import com.limelight.BuildConfig;
 import com.limelight.LimeLog;
@@ -58,7 +36,6 @@ import com.limelight.nvstream.ConnectionContext;
 import com.limelight.nvstream.http.PairingManager.PairState;
 import com.limelight.nvstream.jni.MoonBridge;
 
-import okhttp3.ConnectionPool;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -84,122 +61,21 @@ public class NvHTTP {
 
     private int httpsPort;
     
-    private OkHttpClient httpClientLongConnectTimeout;
-    private OkHttpClient httpClientLongConnectNoReadTimeout;
-    private OkHttpClient httpClientShortConnectTimeout;
-
-    private X509TrustManager defaultTrustManager;
-    private X509TrustManager trustManager;
-    private X509KeyManager keyManager;
+    private final LimelightCryptoProvider cryptoProvider;
+    private NvHttpClientPool.ClientState clients;
     private X509Certificate serverCert;
 
     void setServerCert(X509Certificate serverCert) {
         this.serverCert = serverCert;
-    }
-
-    private static X509TrustManager getDefaultTrustManager() {
-        try {
-            TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
-            tmf.init((KeyStore) null);
-
-            for (TrustManager tm : tmf.getTrustManagers()) {
-                if (tm instanceof X509TrustManager) {
-                    return (X509TrustManager) tm;
-                }
-            }
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
-        } catch (KeyStoreException e) {
-            throw new RuntimeException(e);
-        }
 
-        throw new IllegalStateException("No X509 trust manager found");
-    }
-
-    private void initializeHttpState(final LimelightCryptoProvider cryptoProvider) {
-        keyManager = new X509KeyManager() {
-            public String chooseClientAlias(String[] keyTypes,
-                    Principal[] issuers, Socket socket) { return "Limelight-RSA"; }
-            public String chooseServerAlias(String keyType, Principal[] issuers,
-                    Socket socket) { return null; }
-            public X509Certificate[] getCertificateChain(String alias) {
-                return new X509Certificate[] {cryptoProvider.getClientCertificate()};
-            }
-            public String[] getClientAliases(String keyType, Principal[] issuers) { return null; }
-            public PrivateKey getPrivateKey(String alias) {
-                return cryptoProvider.getClientPrivateKey();
-            }
-            public String[] getServerAliases(String keyType, Principal[] issuers) { return null; }
-        };
-
-        defaultTrustManager = getDefaultTrustManager();
-        trustManager = new X509TrustManager() {
-            public X509Certificate[] getAcceptedIssuers() {
-                return new X509Certificate[0];
-            }
-            public void checkClientTrusted(X509Certificate[] certs, String authType) {
-                throw new IllegalStateException("Should never be called");
-            }
-            public void checkServerTrusted(X509Certificate[] certs, String authType) throws CertificateException {
-                try {
-                    // Try the default trust manager first to allow pairing with certificates
-                    // that chain up to a trusted root CA. This will raise CertificateException
-                    // if the certificate is not trusted (expected for GFE's self-signed certs).
-                    defaultTrustManager.checkServerTrusted(certs, authType);
-                } catch (CertificateException e) {
-                    // Check the server certificate if we've paired to this host
-                    if (certs.length == 1 && NvHTTP.this.serverCert != null) {
-                        if (!certs[0].equals(NvHTTP.this.serverCert)) {
-                            throw new CertificateException("Certificate mismatch");
-                        }
-                    }
-                    else {
-                        // The cert chain doesn't look like a self-signed cert or we don't have
-                        // a certificate pinned, so re-throw the original validation error.
-                        throw e;
-                    }
-                }
-            }
-        };
-
-        HostnameVerifier hv = new HostnameVerifier() {
-            public boolean verify(String hostname, SSLSession session) {
-                try {
-                    Certificate[] certificates = session.getPeerCertificates();
-                    if (certificates.length == 1 && certificates[0].equals(NvHTTP.this.serverCert)) {
-                        // Allow any hostname if it's our pinned cert
-                        return true;
-                    }
-                } catch (SSLPeerUnverifiedException e) {
-                    e.printStackTrace();
-                }
-
-                // Fall back to default HostnameVerifier for validating CA-issued certs
-                return HttpsURLConnection.getDefaultHostnameVerifier().verify(hostname, session);
-            }
-        };
-
-        httpClientLongConnectTimeout = new OkHttpClient.Builder()
-                .connectionPool(new ConnectionPool(0, 1, TimeUnit.MILLISECONDS))
-                .hostnameVerifier(hv)
-                .readTimeout(READ_TIMEOUT, TimeUnit.MILLISECONDS)
-                .connectTimeout(LONG_CONNECTION_TIMEOUT, TimeUnit.MILLISECONDS)
-                .proxy(Proxy.NO_PROXY)
-                .build();
-
-        httpClientShortConnectTimeout = httpClientLongConnectTimeout.newBuilder()
-                .connectTimeout(SHORT_CONNECTION_TIMEOUT, TimeUnit.MILLISECONDS)
-                .build();
-
-        httpClientLongConnectNoReadTimeout = httpClientLongConnectTimeout.newBuilder()
-                .readTimeout(0, TimeUnit.MILLISECONDS)
-                .build();
+        // Trust decisions are baked into the shared clients, so switch to the ones for this cert
+        this.clients = NvHttpClientPool.get(baseUrlHttp.host(), serverCert, cryptoProvider);
     }
 
     public HttpUrl getHttpsUrl(boolean likelyOnline) throws IOException, InterruptedException {
         if (httpsPort == 0) {
             // Fetch the HTTPS port if we don't have it already
-            httpsPort = getHttpsPort(openHttpConnectionToString(likelyOnline ? httpClientLongConnectTimeout : httpClientShortConnectTimeout,
+            httpsPort = getHttpsPort(openHttpConnectionToString(likelyOnline ? clients.longConnectTimeout : clients.shortConnectTimeout,
                     baseUrlHttp, "serverinfo"));
         }
 
@@ -214,8 +90,7 @@ public class NvHTTP {
         if (!clientName.isEmpty()) this.clientName = clientName;
 
         this.serverCert = serverCert;
-
-        initializeHttpState(cryptoProvider);
+        this.cryptoProvider = cryptoProvider;
 
         this.httpsPort = httpsPort;
 
@@ -242,13 +117,12 @@ public class NvHTTP {
             throw new IOException(e);
         }
 
+        this.clients = NvHttpClientPool.get(baseUrlHttp.host(), serverCert, cryptoProvider);
         this.pm = new PairingManager(this, cryptoProvider);
     }
 
     static String getXmlString(Reader r, String tagname, boolean throwIfMissing) throws XmlPullParserException, IOException {
-        XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
-        factory.setNamespaceAware(true);
-        XmlPullParser xpp = factory.newPullParser();
+        XmlPullParser xpp = ServerInfo.newPullParser();
 
         xpp.setInput(r);
         int eventType = xpp.getEventType();
@@ -286,10 +160,10 @@ public class NvHTTP {
     }
 
     static String getXmlString(String str, String tagname, boolean throwIfMissing) throws XmlPullParserException, IOException {
-        return getXmlString(new StringReader(str), tagname, throwIfMissing);
+        return ServerInfo.parse(str).getString(tagname, throwIfMissing);
     }
     
-    private static void verifyResponseStatus(XmlPullParser xpp) throws HostHttpResponseException {
+    static void verifyResponseStatus(XmlPullParser xpp) throws HostHttpResponseException {
         // We use Long.parseLong() because in rare cases GFE can send back a status code of
         // 0xFFFFFFFF, which will cause Integer.parseInt() to throw a NumberFormatException due
         // to exceeding Integer.MAX_VALUE. We'll get the desired error code of -1 by just casting
@@ -311,7 +185,7 @@ public class NvHTTP {
         String resp;
 
         // If we believe the PC is online, give it a little extra time to respond
-        OkHttpClient client = likelyOnline ? httpClientLongConnectTimeout : httpClientShortConnectTimeout;
+        OkHttpClient client = likelyOnline ? clients.longConnectTimeout : clients.shortConnectTimeout;
         
         //
         // TODO: Shield Hub uses HTTP for this and is able to get an accurate PairStatus with HTTP.
@@ -404,20 +278,6 @@ public class NvHTTP {
         return getComputerDetails(getServerInfo(likelyOnline));
     }
 
-    // This hack is Android-specific but we do it on all platforms
-    // because it doesn't really matter
-    private OkHttpClient performAndroidTlsHack(OkHttpClient client) {
-        // Doing this each time we create a socket is required
-        // to avoid the SSLv3 fallback that causes connection failures
-        try {
-            SSLContext sc = SSLContext.getInstance("TLS");
-            sc.init(new KeyManager[] { keyManager }, new TrustManager[] { trustManager }, new SecureRandom());
-            return client.newBuilder().sslSocketFactory(sc.getSocketFactory(), trustManager).build();
-        } catch (NoSuchAlgorithmException | KeyManagementException e) {
-            throw new RuntimeException(e);
-        }
-    }
-
     private HttpUrl getCompleteUrl(HttpUrl baseUrl, String path, String query) {
         return baseUrl.newBuilder()
                 .addPathSegment(path)
@@ -439,7 +299,7 @@ public class NvHTTP {
     private ResponseBody openHttpConnection(OkHttpClient client, HttpUrl baseUrl, String path, String query) throws IOException, InterruptedException {
         HttpUrl completeUrl = getCompleteUrl(baseUrl, path, query);
         Request request = new Request.Builder().url(completeUrl).get().build();
-        Response response = performAndroidTlsHack(client).newCall(request).execute();
+        Response response = client.newCall(request).execute();
 
         ResponseBody body = response.body();
         
@@ -508,7 +368,7 @@ public class NvHTTP {
             .addHeader("Content-Type", "application/json")
             .build();
             
-        Response response = performAndroidTlsHack(client).newCall(request).execute();
+        Response response = client.newCall(request).execute();
         ResponseBody responseBody = response.body();
         
         if (response.isSuccessful() && responseBody != null) {
@@ -551,22 +411,12 @@ public class NvHTTP {
     
     public long getMaxLumaPixelsH264(String serverInfo) throws XmlPullParserException, IOException {
         // MaxLumaPixelsH264 wasn't present on old GFE versions
-        String str = getXmlString(serverInfo, "MaxLumaPixelsH264", false);
-        if (str != null) {
-            return Long.parseLong(str);
-        } else {
-            return 0;
-        }
+        return ServerInfo.parse(serverInfo).getLong("MaxLumaPixelsH264", 0);
     }
     
     public long getMaxLumaPixelsHEVC(String serverInfo) throws XmlPullParserException, IOException {
         // MaxLumaPixelsHEVC wasn't present on old GFE versions
-        String str = getXmlString(serverInfo, "MaxLumaPixelsHEVC", false);
-        if (str != null) {
-            return Long.parseLong(str);
-        } else {
-            return 0;
-        }
+        return ServerInfo.parse(serverInfo).getLong("MaxLumaPixelsHEVC", 0);
     }
 
     // Possible meaning of bits
@@ -579,12 +429,7 @@ public class NvHTTP {
     // Bit 11: ???
     public long getServerCodecModeSupport(String serverInfo) throws XmlPullParserException, IOException {
         // ServerCodecModeSupport wasn't present on old GFE versions
-        String str = getXmlString(serverInfo, "ServerCodecModeSupport", false);
-        if (str != null) {
-            return Long.parseLong(str);
-        } else {
-            return 0;
-        }
+        return ServerInfo.parse(serverInfo).getLong("ServerCodecModeSupport", 0);
     }
     
     public String getGpuType(String serverInfo) throws XmlPullParserException, IOException {
@@ -685,9 +530,7 @@ public class NvHTTP {
     }
     
     public static LinkedList<NvApp> getAppListByReader(Reader r) throws XmlPullParserException, IOException {
-        XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
-        factory.setNamespaceAware(true);
-        XmlPullParser xpp = factory.newPullParser();
+        XmlPullParser xpp = ServerInfo.newPullParser();
 
         xpp.setInput(r);
         int eventType = xpp.getEventType();
@@ -752,7 +595,7 @@ public class NvHTTP {
     }
     
     public String getAppListRaw() throws IOException, InterruptedException {
-        return openHttpConnectionToString(httpClientLongConnectTimeout, getHttpsUrl(true), "applist");
+        return openHttpConnectionToString(clients.longConnectTimeout, getHttpsUrl(true), "applist");
     }
     
     public LinkedList<NvApp> getAppList() throws HostHttpResponseException, IOException, XmlPullParserException, InterruptedException {
@@ -761,28 +604,28 @@ public class NvHTTP {
             return getAppListByReader(new StringReader(getAppListRaw()));
         }
         else {
-            try (final ResponseBody resp = openHttpConnection(httpClientLongConnectTimeout, getHttpsUrl(true), "applist")) {
+            try (final ResponseBody resp = openHttpConnection(clients.longConnectTimeout, getHttpsUrl(true), "applist")) {
                 return getAppListByReader(new InputStreamReader(resp.byteStream()));
             }
         }
     }
 
     String executePairingCommand(String additionalArguments, boolean enableReadTimeout) throws HostHttpResponseException, IOException, InterruptedException {
-        return openHttpConnectionToString(enableReadTimeout ? httpClientLongConnectTimeout : httpClientLongConnectNoReadTimeout,
+        return openHttpConnectionToString(enableReadTimeout ? clients.longConnectTimeout : clients.longConnectNoReadTimeout,
                 baseUrlHttp, "pair", "devicename=roth&updateState=1&" + additionalArguments);
     }
 
     String executePairingChallenge() throws HostHttpResponseException, IOException, InterruptedException {
-        return openHttpConnectionToString(httpClientLongConnectTimeout, getHttpsUrl(true),
+        return openHttpConnectionToString(clients.longConnectTimeout, getHttpsUrl(true),
                 "pair", "devicename=roth&updateState=1&phrase=pairchallenge");
     }
 
     public void unpair() throws IOException, InterruptedException {
-        openHttpConnectionToString(httpClientLongConnectTimeout, baseUrlHttp, "unpair");
+        openHttpConnectionToString(clients.longConnectTimeout, baseUrlHttp, "unpair");
     }
     
     public InputStream getBoxArt(NvApp app) throws IOException, InterruptedException {
-        ResponseBody resp = openHttpConnection(httpClientLongConnectTimeout, getHttpsUrl(true), "appasset", "appid=" + app.getAppId() + "&AssetType=2&AssetIdx=0");
+        ResponseBody resp = openHttpConnection(clients.longConnectTimeout, getHttpsUrl(true), "appasset", "appid=" + app.getAppId() + "&AssetType=2&AssetIdx=0");
         return resp.byteStream();
     }
     
@@ -806,7 +649,7 @@ public class NvHTTP {
     
     public List<DisplayInfo> getDisplays() throws IOException, InterruptedException {
         try {
-            String jsonStr = openHttpConnectionToString(httpClientLongConnectTimeout, getHttpsUrl(true), "displays");
+            String jsonStr = openHttpConnectionToString(clients.longConnectTimeout, getHttpsUrl(true), "displays");
             JSONObject json = new JSONObject(jsonStr);
             
             int statusCode = json.optInt("status_code", 0);
@@ -860,7 +703,7 @@ public class NvHTTP {
     }
 
     final private static char[] hexArray = "0123456789ABCDEF".toCharArray();
-    private static String bytesToHex(byte[] bytes) {
+    static String bytesToHex(byte[] bytes) {
         char[] hexChars = new char[bytes.length * 2];
         for ( int j = 0; j < bytes.length; j++ ) {
             int v = bytes[j] & 0xFF;
@@ -921,7 +764,7 @@ public class NvHTTP {
         
         queryParams += MoonBridge.getLaunchUrlQueryParameters();
         
-        String xmlStr = openHttpConnectionToString(httpClientLongConnectNoReadTimeout, getHttpsUrl(true), verb, queryParams);
+        String xmlStr = openHttpConnectionToString(clients.longConnectNoReadTimeout, getHttpsUrl(true), verb, queryParams);
         if ((verb.equals("launch") && !getXmlString(xmlStr, "gamesession", true).equals("0") ||
                 (verb.equals("resume") && !getXmlString(xmlStr, "resume", true).equals("0")))) {
             // sessionUrl0 will be missing for older GFE versions
@@ -934,7 +777,7 @@ public class NvHTTP {
     }
     
     public boolean quitApp() throws IOException, XmlPullParserException, InterruptedException {
-        String xmlStr = openHttpConnectionToString(httpClientLongConnectNoReadTimeout, getHttpsUrl(true), "cancel");
+        String xmlStr = openHttpConnectionToString(clients.longConnectNoReadTimeout, getHttpsUrl(true), "cancel");
         if (getXmlString(xmlStr, "cancel", true).equals("0")) {
             return false;
         }
@@ -951,12 +794,12 @@ public class NvHTTP {
     }
 
     public boolean pcSleep() throws IOException, XmlPullParserException, InterruptedException {
-        String xmlStr = openHttpConnectionToString(httpClientLongConnectNoReadTimeout, getHttpsUrl(true), "pcsleep");
+        String xmlStr = openHttpConnectionToString(clients.longConnectNoReadTimeout, getHttpsUrl(true), "pcsleep");
         return !getXmlString(xmlStr, "pcsleep", true).equals("0");
     }
 
     public boolean sendSuperCmd(String cmdId) throws IOException, XmlPullParserException, InterruptedException {
-        String xmlStr = openHttpConnectionToString(httpClientLongConnectNoReadTimeout, getHttpsUrl(true), "supercmd", "cmdId=" + cmdId);
+        String xmlStr = openHttpConnectionToString(clients.longConnectNoReadTimeout, getHttpsUrl(true), "supercmd", "cmdId=" + cmdId);
         return !getXmlString(xmlStr, "supercmd", true).equals("0");
     }
 
@@ -970,7 +813,7 @@ public class NvHTTP {
         String query = String.format("bitrate=%d", bitrateKbps);
         
         // 调用主机端API: GET /api/stream/bitrate?bitrate=xxx
-        String xmlStr = openHttpConnectionToString(httpClientLongConnectNoReadTimeout, 
+        String xmlStr = openHttpConnectionToString(clients.longConnectNoReadTimeout, 
             getHttpsUrl(true), "bitrate", query);
         
         // 检查响应是否成功
@@ -0,0 +1,211 @@
+package com.limelight.nvstream.http;
+
+import java.net.Proxy;
+import java.net.Socket;
+import java.security.KeyManagementException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509KeyManager;
+import javax.net.ssl.X509TrustManager;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+
+// Shares HTTP client state between NvHTTP instances talking to the same host.
+//
+// Building an SSLContext per NvHTTP (or worse, per request) meant that every serverinfo poll and
+// every mid-stream control request paid for a new TCP connection and a full mutual TLS handshake.
+// Clients for the same host and pinned certificate now share one SSLContext, whose client session
+// cache allows TLS session resumption, and all clients share one OkHttp connection pool so idle
+// keep-alive connections get reused. OkHttp only reuses a pooled connection for requests with the
+// same socket factory and hostname verifier, so a connection validated against one pinned
+// certificate is never handed to a client expecting another.
+class NvHttpClientPool {
+    // Enough for a handful of hosts being polled at once. Idle connections are closed quickly,
+    // since polling happens every few seconds at most and hosts may go to sleep.
+    private static final ConnectionPool connectionPool = new ConnectionPool(8, 30, TimeUnit.SECONDS);
+
+    // Clears everything if we somehow accumulate this many (such as from address changes)
+    private static final int MAX_ENTRIES = 32;
+
+    private static final Map<String, ClientState> clients = new ConcurrentHashMap<>();
+
+    private static X509TrustManager defaultTrustManager;
+
+    static class ClientState {
+        final OkHttpClient longConnectTimeout;
+        final OkHttpClient longConnectNoReadTimeout;
+        final OkHttpClient shortConnectTimeout;
+
+        private ClientState(final LimelightCryptoProvider cryptoProvider, final X509Certificate serverCert) {
+            X509KeyManager keyManager = new X509KeyManager() {
+                public String chooseClientAlias(String[] keyTypes,
+                        Principal[] issuers, Socket socket) { return "Limelight-RSA"; }
+                public String chooseServerAlias(String keyType, Principal[] issuers,
+                        Socket socket) { return null; }
+                public X509Certificate[] getCertificateChain(String alias) {
+                    return new X509Certificate[] {cryptoProvider.getClientCertificate()};
+                }
+                public String[] getClientAliases(String keyType, Principal[] issuers) { return null; }
+                public PrivateKey getPrivateKey(String alias) {
+                    return cryptoProvider.getClientPrivateKey();
+                }
+                public String[] getServerAliases(String keyType, Principal[] issuers) { return null; }
+            };
+
+            final X509TrustManager defaultTrustManager = getDefaultTrustManager();
+            X509TrustManager trustManager = new X509TrustManager() {
+                public X509Certificate[] getAcceptedIssuers() {
+                    return new X509Certificate[0];
+                }
+                public void checkClientTrusted(X509Certificate[] certs, String authType) {
+                    throw new IllegalStateException("Should never be called");
+                }
+                public void checkServerTrusted(X509Certificate[] certs, String authType) throws CertificateException {
+                    try {
+                        // Try the default trust manager first to allow pairing with certificates
+                        // that chain up to a trusted root CA. This will raise CertificateException
+                        // if the certificate is not trusted (expected for GFE's self-signed certs).
+                        defaultTrustManager.checkServerTrusted(certs, authType);
+                    } catch (CertificateException e) {
+                        // Check the server certificate if we've paired to this host
+                        if (certs.length == 1 && serverCert != null) {
+                            if (!certs[0].equals(serverCert)) {
+                                throw new CertificateException("Certificate mismatch");
+                            }
+                        }
+                        else {
+                            // The cert chain doesn't look like a self-signed cert or we don't have
+                            // a certificate pinned, so re-throw the original validation error.
+                            throw e;
+                        }
+                    }
+                }
+            };
+
+            HostnameVerifier hv = new HostnameVerifier() {
+                public boolean verify(String hostname, SSLSession session) {
+                    try {
+                        Certificate[] certificates = session.getPeerCertificates();
+                        if (certificates.length == 1 && certificates[0].equals(serverCert)) {
+                            // Allow any hostname if it's our pinned cert
+                            return true;
+                        }
+                    } catch (SSLPeerUnverifiedException e) {
+                        e.printStackTrace();
+                    }
+
+                    // Fall back to default HostnameVerifier for validating CA-issued certs
+                    return HttpsURLConnection.getDefaultHostnameVerifier().verify(hostname, session);
+                }
+            };
+
+            // Explicitly requesting "TLS" also avoids the SSLv3 fallback that old Android
+            // versions would otherwise attempt on connection failures.
+            SSLContext sc;
+            try {
+                sc = SSLContext.getInstance("TLS");
+                sc.init(new KeyManager[] { keyManager }, new TrustManager[] { trustManager }, new SecureRandom());
+            } catch (NoSuchAlgorithmException | KeyManagementException e) {
+                throw new RuntimeException(e);
+            }
+
+            longConnectTimeout = new OkHttpClient.Builder()
+                    .connectionPool(connectionPool)
+                    .sslSocketFactory(sc.getSocketFactory(), trustManager)
+                    .hostnameVerifier(hv)
+                    .readTimeout(NvHTTP.READ_TIMEOUT, TimeUnit.MILLISECONDS)
+                    .connectTimeout(NvHTTP.LONG_CONNECTION_TIMEOUT, TimeUnit.MILLISECONDS)
+                    .proxy(Proxy.NO_PROXY)
+                    .build();
+
+            shortConnectTimeout = longConnectTimeout.newBuilder()
+                    .connectTimeout(NvHTTP.SHORT_CONNECTION_TIMEOUT, TimeUnit.MILLISECONDS)
+                    .build();
+
+            longConnectNoReadTimeout = longConnectTimeout.newBuilder()
+                    .readTimeout(0, TimeUnit.MILLISECONDS)
+                    .build();
+        }
+    }
+
+    private static synchronized X509TrustManager getDefaultTrustManager() {
+        if (defaultTrustManager != null) {
+            return defaultTrustManager;
+        }
+
+        try {
+            TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            tmf.init((KeyStore) null);
+
+            for (TrustManager tm : tmf.getTrustManagers()) {
+                if (tm instanceof X509TrustManager) {
+                    defaultTrustManager = (X509TrustManager) tm;
+                    return defaultTrustManager;
+                }
+            }
+        } catch (NoSuchAlgorithmException | KeyStoreException e) {
+            throw new RuntimeException(e);
+        }
+
+        throw new IllegalStateException("No X509 trust manager found");
+    }
+
+    private static String getFingerprint(X509Certificate cert) {
+        if (cert == null) {
+            return "none";
+        }
+
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(cert.getEncoded());
+            return NvHTTP.bytesToHex(digest);
+        } catch (NoSuchAlgorithmException | CertificateEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // The client certificate is part of the key so a regenerated identity (or another crypto
+    // provider) never reuses an SSLContext that would present the old one
+    private static String getKey(String host, X509Certificate serverCert, X509Certificate clientCert) {
+        return host + "/" + getFingerprint(serverCert) + "/" + getFingerprint(clientCert);
+    }
+
+    static ClientState get(String host, X509Certificate serverCert, LimelightCryptoProvider cryptoProvider) {
+        String key = getKey(host, serverCert, cryptoProvider.getClientCertificate());
+
+        ClientState state = clients.get(key);
+        if (state != null) {
+            return state;
+        }
+
+        if (clients.size() >= MAX_ENTRIES) {
+            clients.clear();
+        }
+
+        // Racing callers may both build one, but only the first is kept
+        state = new ClientState(cryptoProvider, serverCert);
+        ClientState existing = clients.putIfAbsent(key, state);
+        return existing != null ? existing : state;
+    }
+}
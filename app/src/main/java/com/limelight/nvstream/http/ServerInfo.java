@@ -0,0 +1,118 @@
+package com.limelight.nvstream.http;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+// The fields of a host XML response (typically serverinfo), read in a single pass.
+//
+// Callers like getComputerDetails() and NvConnection.startApp() ask for a dozen fields of the
+// same serverinfo document, which used to mean a new parser factory and a full scan of the
+// document for every field. The last response parsed on each thread is cached, so a sequence
+// of lookups on the same string only parses it once.
+class ServerInfo {
+    private static XmlPullParserFactory parserFactory;
+
+    // Per thread, so lookups never need a lock. Polling shares a few worker threads between
+    // hosts, so another host's response can evict ours between two polls; the cache is only
+    // opportunistic. Lookups compare the whole string, so a stale entry is never returned.
+    private static final ThreadLocal<ServerInfo> lastParsed = new ThreadLocal<>();
+
+    private final String source;
+    private final HashMap<String, String> fields = new HashMap<>();
+
+    // Thrown from every lookup if the root element carried an error status
+    private HostHttpResponseException statusException;
+
+    private ServerInfo(String source) {
+        this.source = source;
+    }
+
+    static synchronized XmlPullParser newPullParser() throws XmlPullParserException {
+        if (parserFactory == null) {
+            parserFactory = XmlPullParserFactory.newInstance();
+            parserFactory.setNamespaceAware(true);
+        }
+        return parserFactory.newPullParser();
+    }
+
+    static ServerInfo parse(String xml) throws XmlPullParserException, IOException {
+        ServerInfo cached = lastParsed.get();
+        if (cached != null && cached.source.equals(xml)) {
+            return cached;
+        }
+
+        ServerInfo info = new ServerInfo(xml);
+        info.readFields();
+        lastParsed.set(info);
+        return info;
+    }
+
+    private void readFields() throws XmlPullParserException, IOException {
+        XmlPullParser xpp = newPullParser();
+        xpp.setInput(new StringReader(source));
+
+        // Only the innermost element matters for the text we see, so we just track its name
+        String[] tagStack = new String[8];
+        int depth = 0;
+
+        int eventType = xpp.getEventType();
+        while (eventType != XmlPullParser.END_DOCUMENT) {
+            switch (eventType) {
+            case (XmlPullParser.START_TAG):
+                if (xpp.getName().equals("root")) {
+                    try {
+                        NvHTTP.verifyResponseStatus(xpp);
+                    } catch (HostHttpResponseException e) {
+                        statusException = e;
+                        return;
+                    }
+                }
+                if (depth == tagStack.length) {
+                    String[] newStack = new String[depth * 2];
+                    System.arraycopy(tagStack, 0, newStack, 0, depth);
+                    tagStack = newStack;
+                }
+                tagStack[depth++] = xpp.getName();
+                break;
+            case (XmlPullParser.END_TAG):
+                depth--;
+                break;
+            case (XmlPullParser.TEXT):
+                // Like before, the first text seen for a tag is its value
+                if (depth > 0 && !fields.containsKey(tagStack[depth - 1])) {
+                    fields.put(tagStack[depth - 1], xpp.getText());
+                }
+                break;
+            }
+            eventType = xpp.next();
+        }
+    }
+
+    String getString(String tagname, boolean throwIfMissing) throws XmlPullParserException, HostHttpResponseException {
+        if (statusException != null) {
+            throw statusException;
+        }
+
+        String value = fields.get(tagname);
+        if (value == null && throwIfMissing) {
+            // We throw an XmlPullParserException here for ease of handling in all the various callers.
+            // We could also throw an IOException, but some callers expect those in cases where the
+            // host may not be reachable. We want to distinguish unreachable hosts vs. hosts that
+            // are returning garbage XML to us, so we use XmlPullParserException instead.
+            throw new XmlPullParserException("Missing mandatory field in host response: "+tagname);
+        }
+
+        return value;
+    }
+
+    // Returns the field as a long, or the default if it's missing
+    long getLong(String tagname, long defaultValue) throws XmlPullParserException, HostHttpResponseException {
+        String str = getString(tagname, false);
+        return str != null ? Long.parseLong(str) : defaultValue;
+    }
+}
@@ -0,0 +1,32 @@
+package com.limelight.nvstream.input;
+
+// All the pointers of one touch event, in parallel arrays so the whole frame can be handed
+// to native code in a single call. Meant to be allocated once and refilled for every event.
+public class TouchFrame {
+    // Android never reports more pointers than this in one MotionEvent
+    public static final int MAX_POINTERS = 32;
+
+    public final int[] pointerIds = new int[MAX_POINTERS];
+    public final float[] x = new float[MAX_POINTERS];
+    public final float[] y = new float[MAX_POINTERS];
+    public final float[] pressureOrDistance = new float[MAX_POINTERS];
+    public final float[] contactAreaMajor = new float[MAX_POINTERS];
+    public final float[] contactAreaMinor = new float[MAX_POINTERS];
+    public final short[] rotation = new short[MAX_POINTERS];
+
+    private int count;
+
+    public void clear() {
+        count = 0;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    // Returns the index to fill in, after setting the pointer ID
+    public int add(int pointerId) {
+        pointerIds[count] = pointerId;
+        return count++;
+    }
+}
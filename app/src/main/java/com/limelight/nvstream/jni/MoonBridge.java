@@ -4,6 +4,8 @@ import com.limelight.nvstream.NvConnectionListener;
 import com.limelight.nvstream.av.audio.AudioRenderer;
 import com.limelight.nvstream.av.video.VideoDecoderRenderer;
 
+import java.nio.ByteBuffer;
+
 public class MoonBridge {
     /* See documentation in Limelight.h for information about these functions and constants */
 
@@ -227,6 +229,36 @@ public class MoonBridge {
         }
     }
 
+    public static boolean bridgeDrUsesDirectBuffers() {
+        if (videoRenderer != null) {
+            return videoRenderer.supportsDirectDecodeUnitBuffers();
+        }
+        else {
+            return false;
+        }
+    }
+
+    public static ByteBuffer bridgeDrBeginDirectDecodeUnit(int decodeUnitLength, int frameNumber, int frameType,
+                                                           char frameHostProcessingLatency,
+                                                           long receiveTimeUs, long enqueueTimeUs) {
+        if (videoRenderer != null) {
+            return videoRenderer.beginDirectDecodeUnit(decodeUnitLength, frameNumber, frameType,
+                    frameHostProcessingLatency, receiveTimeUs, enqueueTimeUs);
+        }
+        else {
+            return null;
+        }
+    }
+
+    public static int bridgeDrCommitDirectDecodeUnit(int decodeUnitLength) {
+        if (videoRenderer != null) {
+            return videoRenderer.commitDirectDecodeUnit(decodeUnitLength);
+        }
+        else {
+            return DR_OK;
+        }
+    }
+
     public static int bridgeArInit(int audioConfiguration, int sampleRate, int samplesPerFrame) {
         if (audioRenderer != null) {
             return audioRenderer.setup(new AudioConfiguration(audioConfiguration), sampleRate, samplesPerFrame);
@@ -260,6 +292,12 @@ public class MoonBridge {
         }
     }
 
+    public static void bridgeArPlayDirectSample(ByteBuffer pcmData, int sampleCount) {
+        if (audioRenderer != null) {
+            audioRenderer.playDecodedAudio(pcmData, sampleCount);
+        }
+    }
+
     public static void bridgeClStageStarting(int stage) {
         if (connectionListener != null) {
             connectionListener.stageStarting(getStageName(stage));
@@ -376,6 +414,12 @@ public class MoonBridge {
     public static native int sendTouchEvent(byte eventType, int pointerId, float x, float y, float pressure,
                                             float contactAreaMajor, float contactAreaMinor, short rotation);
 
+    // Sends the first count pointers of each array as touch events of the same type, in one
+    // call. Stops at the first error and returns it.
+    public static native int sendTouchFrame(byte eventType, int count, int[] pointerIds, float[] x, float[] y,
+                                            float[] pressure, float[] contactAreaMajor, float[] contactAreaMinor,
+                                            short[] rotation);
+
     public static native int sendPenEvent(byte eventType, byte toolType, byte penButtons, float x, float y,
                                           float pressure, float contactAreaMajor, float contactAreaMinor,
                                           short rotation, byte tilt);
@@ -432,7 +476,8 @@ public class MoonBridge {
     
     public static native boolean isMicrophoneRequested();
     
-    public static native int sendMicrophoneOpusData(byte[] opusData);
+    // opusData must be a direct buffer holding the packet in its first length bytes
+    public static native int sendMicrophoneOpusData(ByteBuffer opusData, int length);
     
     public static native boolean isMicrophoneEncryptionEnabled();
 }
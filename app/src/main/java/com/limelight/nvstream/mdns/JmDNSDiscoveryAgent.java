@@ -260,6 +260,7 @@ public class JmDNSDiscoveryAgent extends MdnsDiscoveryAgent implements ServiceLi
     @Override
     public void serviceRemoved(ServiceEvent event) {
         LimeLog.info("mDNS: Machine disappeared: "+event.getInfo().getName());
+        reportComputerLost(event.getInfo().getName());
     }
 
     @Override
@@ -6,6 +6,7 @@ import java.net.Inet4Address;
 import java.net.Inet6Address;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 
 public abstract class MdnsDiscoveryAgent {
@@ -52,6 +53,20 @@ public abstract class MdnsDiscoveryAgent {
         }
     }
 
+    protected void reportComputerLost(String name) {
+        // Forget the machine so it gets reported again when it next announces itself
+        // (such as after waking up), which lets the host list react immediately
+        // instead of waiting for the next reachability check.
+        synchronized (computers) {
+            Iterator<MdnsComputer> it = computers.iterator();
+            while (it.hasNext()) {
+                if (it.next().getName().equals(name)) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
     public List<MdnsComputer> getComputerSet() {
         synchronized (computers) {
             return new ArrayList<>(computers);
@@ -143,6 +143,8 @@ public class NsdManagerDiscoveryAgent extends MdnsDiscoveryAgent {
                     if (serviceInfoCallback != null) {
                         nsdManager.unregisterServiceInfoCallback(serviceInfoCallback);
                     }
+
+                    reportComputerLost(nsdServiceInfo.getServiceName());
                 }
             }
         };
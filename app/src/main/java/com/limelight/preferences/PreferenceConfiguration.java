@@ -74,6 +74,7 @@ public class PreferenceConfiguration {
     private static final String LANGUAGE_PREF_STRING = "list_languages";
     private static final String SMALL_ICONS_PREF_STRING = "checkbox_small_icon_mode";
     private static final String MULTI_CONTROLLER_PREF_STRING = "checkbox_multi_controller";
+    private static final String CONTROLLER_ANALOG_RATE_PREF_STRING = "list_controller_analog_rate";
     static final String AUDIO_CONFIG_PREF_STRING = "list_audio_config";
     private static final String USB_DRIVER_PREF_SRING = "checkbox_usb_driver";
     private static final String VIDEO_FORMAT_PREF_STRING = "video_format";
@@ -104,7 +105,12 @@ public class PreferenceConfiguration {
     private static final String SWAP_QUIT_AND_DISCONNECT_PERF_STRING = "checkbox_swap_quit_and_disconnect";
     private static final String SCREEN_COMBINATION_MODE_PREF_STRING = "list_screen_combination_mode";
     private static final String FRAME_PACING_PREF_STRING = "frame_pacing";
+    private static final String ADAPTIVE_BITRATE_PREF_STRING = "checkbox_adaptive_bitrate";
     private static final String ABSOLUTE_MOUSE_MODE_PREF_STRING = "checkbox_absolute_mouse_mode";
+    private static final String TOUCH_COALESCING_PREF_STRING = "list_touch_coalescing";
+    private static final String PEN_COALESCING_PREF_STRING = "list_pen_coalescing";
+    private static final String MOUSE_COALESCING_PREF_STRING = "list_mouse_coalescing";
+    private static final String TRACKPAD_COALESCING_PREF_STRING = "list_trackpad_coalescing";
     public static final String ENABLE_NATIVE_MOUSE_POINTER_PREF_STRING = "checkbox_enable_native_mouse_pointer";
     public static final String NATIVE_MOUSE_MODE_PRESET_PREF_STRING = "list_native_mouse_mode_preset";
     // Card visibility preferences
@@ -121,6 +127,12 @@ public class PreferenceConfiguration {
 
     private static final String ENABLE_AUDIO_FX_PREF_STRING = "checkbox_enable_audiofx";
     private static final String ENABLE_SPATIALIZER_PREF_STRING = "checkbox_enable_spatializer";
+    private static final String AUDIO_OUTPUT_THREAD_PREF_STRING = "checkbox_audio_output_thread";
+    private static final String AUDIO_FLOAT_OUTPUT_PREF_STRING = "checkbox_audio_float_output";
+    private static final String AUDIO_CONVERSION_PREF_STRING = "checkbox_audio_conversion";
+    private static final String AV_SYNC_PREF_STRING = "checkbox_av_sync";
+    private static final String AV_SYNC_WINDOW_PREF_STRING = "seekbar_av_sync_window_ms";
+    private static final String AV_SYNC_DISPLAY_LATENCY_PREF_STRING = "seekbar_av_sync_display_latency_ms";
     private static final String REDUCE_REFRESH_RATE_PREF_STRING = "checkbox_reduce_refresh_rate";
     private static final String FULL_RANGE_PREF_STRING = "checkbox_full_range";
     private static final String GAMEPAD_TOUCHPAD_AS_MOUSE_PREF_STRING = "checkbox_gamepad_touchpad_as_mouse";
@@ -137,6 +149,9 @@ public class PreferenceConfiguration {
     private static final String ENABLE_MIC_PREF_STRING = "checkbox_enable_mic";
     private static final String MIC_BITRATE_PREF_STRING = "seekbar_mic_bitrate_kbps";
     private static final String MIC_ICON_COLOR_PREF_STRING = "list_mic_icon_color";
+    private static final String MIC_FRAME_SIZE_PREF_STRING = "list_mic_frame_size";
+    private static final String MIC_FEC_PREF_STRING = "checkbox_mic_fec";
+    private static final String MIC_DTX_PREF_STRING = "checkbox_mic_dtx";
     private static final String ENABLE_ESC_MENU_PREF_STRING = "checkbox_enable_esc_menu";
     private static final String ESC_MENU_KEY_PREF_STRING = "list_esc_menu_key";
     
@@ -163,6 +178,7 @@ public class PreferenceConfiguration {
     private static final int DEFAULT_OPACITY = 90;
     public static final String DEFAULT_LANGUAGE = "default";
     private static final boolean DEFAULT_MULTI_CONTROLLER = true;
+    private static final String DEFAULT_CONTROLLER_ANALOG_RATE = "0"; // Unlimited
     private static final boolean DEFAULT_USB_DRIVER = true;
 
     private static final boolean ONSCREEN_CONTROLLER_DEFAULT = false;
@@ -173,6 +189,7 @@ public class PreferenceConfiguration {
     private static final boolean DEFAULT_ENABLE_HDR = false;
     private static final boolean DEFAULT_ENABLE_PIP = false;
     private static final boolean DEFAULT_ENABLE_PERF_OVERLAY = false;
+    private static final boolean DEFAULT_ADAPTIVE_BITRATE = false;
     private static final boolean DEFAULT_PERF_OVERLAY_LOCKED = false;
     private static final String DEFAULT_PERF_OVERLAY_ORIENTATION = "horizontal";
     private static final String DEFAULT_PERF_OVERLAY_POSITION = "top";
@@ -193,9 +210,18 @@ public class PreferenceConfiguration {
     private static final String DEFAULT_SCREEN_COMBINATION_MODE = "-1";
     private static final String DEFAULT_FRAME_PACING = "latency";
     private static final boolean DEFAULT_ABSOLUTE_MOUSE_MODE = false;
+    private static final String DEFAULT_INPUT_COALESCING = "1"; // InputCoalescer.POLICY_LATEST
+    // Trackpad mode has always replayed every sample, and its tap and drag detection relies on it
+    private static final String DEFAULT_TRACKPAD_COALESCING = "0"; // InputCoalescer.POLICY_ALL_SAMPLES
     private static final boolean DEFAULT_ENABLE_NATIVE_MOUSE_POINTER = false;
     private static final boolean DEFAULT_ENABLE_AUDIO_FX = false;
     private static final boolean DEFAULT_ENABLE_SPATIALIZER = false;
+    private static final boolean DEFAULT_AUDIO_OUTPUT_THREAD = false;
+    private static final boolean DEFAULT_AUDIO_FLOAT_OUTPUT = false;
+    private static final boolean DEFAULT_AUDIO_CONVERSION = false;
+    private static final boolean DEFAULT_AV_SYNC = false;
+    private static final int DEFAULT_AV_SYNC_WINDOW_MS = 20;
+    private static final int DEFAULT_AV_SYNC_DISPLAY_LATENCY_MS = 0;
     private static final boolean DEFAULT_REDUCE_REFRESH_RATE = false;
     private static final boolean DEFAULT_FULL_RANGE = false;
     private static final boolean DEFAULT_GAMEPAD_TOUCHPAD_AS_MOUSE = false;
@@ -212,6 +238,9 @@ public class PreferenceConfiguration {
     private static final boolean DEFAULT_ENABLE_MIC = false;
     private static final int DEFAULT_MIC_BITRATE = 96; // 默认128 kbps
     private static final String DEFAULT_MIC_ICON_COLOR = "solid_white"; // 默认白
+    private static final String DEFAULT_MIC_FRAME_SIZE = "20"; // 默认20ms帧
+    private static final boolean DEFAULT_MIC_FEC = true;
+    private static final boolean DEFAULT_MIC_DTX = true;
     private static final boolean DEFAULT_ENABLE_ESC_MENU = true; // 默认启用ESC菜单
     private static final int DEFAULT_ESC_MENU_KEY = KeyEvent.KEYCODE_ESCAPE;
     
@@ -283,6 +312,7 @@ public class PreferenceConfiguration {
 
     public int width, height, fps, resolutionScale;
     public int bitrate;
+    public boolean adaptiveBitrate;
     public int longPressflatRegionPixels; //Assigned to NativeTouchContext.INTIAL_ZONE_PIXELS
     public boolean syncTouchEventWithDisplay; // if true, view.requestUnbufferedDispatch(event) will be disabled
     public boolean enableEnhancedTouch; //Assigned to NativeTouchContext.ENABLE_ENHANCED_TOUCH
@@ -301,6 +331,7 @@ public class PreferenceConfiguration {
     public String language;
     public boolean smallIconMode, multiController, usbDriver, flipFaceButtons;
     public boolean onscreenController;
+    public int controllerAnalogRate;
     public boolean onscreenKeyboard;
     public boolean onlyL3R3;
     public boolean showGuideButton;
@@ -329,9 +360,19 @@ public class PreferenceConfiguration {
     public MoonBridge.AudioConfiguration audioConfiguration;
     public int framePacing;
     public boolean absoluteMouseMode;
+    public int touchCoalescing;
+    public int penCoalescing;
+    public int mouseCoalescing;
+    public int trackpadCoalescing;
     public boolean enableNativeMousePointer;
     public boolean enableAudioFx;
     public boolean enableSpatializer;
+    public boolean audioOutputThread;
+    public boolean audioFloatOutput;
+    public boolean audioConversion;
+    public boolean avSync;
+    public int avSyncWindowMs;
+    public int avSyncDisplayLatencyMs;
     public boolean reduceRefreshRate;
     public boolean fullRange;
     public boolean gamepadMotionSensors;
@@ -360,6 +401,9 @@ public class PreferenceConfiguration {
     public boolean enableMic;
     public int micBitrate;
     public String micIconColor;
+    public int micFrameSizeMs;
+    public boolean micFec;
+    public boolean micDtx;
     
     // ESC菜单设置
     public boolean enableEscMenu;
@@ -731,6 +775,7 @@ public class PreferenceConfiguration {
         if (config.bitrate == 0) {
             config.bitrate = getDefaultBitrate(context);
         }
+        config.adaptiveBitrate = prefs.getBoolean(ADAPTIVE_BITRATE_PREF_STRING, DEFAULT_ADAPTIVE_BITRATE);
 
         config.resolutionScale = prefs.getInt(HOST_SCALE_PREF_STRING, 100);
         config.longPressflatRegionPixels = prefs.getInt(LONG_PRESS_FLAT_REGION_PIXELS_PREF_STRING, 0);  // define a flat region to suppress coordinates jitter. This is a simulation of iOS behavior since it only send 1 touch event during long press, which feels better in some cases.
@@ -781,6 +826,7 @@ public class PreferenceConfiguration {
         config.playHostAudio = prefs.getBoolean(HOST_AUDIO_PREF_STRING, DEFAULT_HOST_AUDIO);
         config.smallIconMode = prefs.getBoolean(SMALL_ICONS_PREF_STRING, getDefaultSmallMode(context));
         config.multiController = prefs.getBoolean(MULTI_CONTROLLER_PREF_STRING, DEFAULT_MULTI_CONTROLLER);
+        config.controllerAnalogRate = Integer.parseInt(prefs.getString(CONTROLLER_ANALOG_RATE_PREF_STRING, DEFAULT_CONTROLLER_ANALOG_RATE));
         config.usbDriver = prefs.getBoolean(USB_DRIVER_PREF_SRING, DEFAULT_USB_DRIVER);
         config.onscreenController = prefs.getBoolean(ONSCREEN_CONTROLLER_PREF_STRING, ONSCREEN_CONTROLLER_DEFAULT);
         config.onscreenKeyboard = prefs.getBoolean(ONSCREEN_KEYBOARD_PREF_STRING, ONSCREEN_KEYBOARD_DEFAULT);
@@ -844,6 +890,10 @@ public class PreferenceConfiguration {
         config.lockScreenAfterDisconnect = prefs.getBoolean(LOCK_SCREEN_AFTER_DISCONNECT_PREF_STRING, DEFAULT_LATENCY_TOAST);
         config.swapQuitAndDisconnect = prefs.getBoolean(SWAP_QUIT_AND_DISCONNECT_PERF_STRING, DEFAULT_LATENCY_TOAST);
         config.absoluteMouseMode = prefs.getBoolean(ABSOLUTE_MOUSE_MODE_PREF_STRING, DEFAULT_ABSOLUTE_MOUSE_MODE);
+        config.touchCoalescing = Integer.parseInt(prefs.getString(TOUCH_COALESCING_PREF_STRING, DEFAULT_INPUT_COALESCING));
+        config.penCoalescing = Integer.parseInt(prefs.getString(PEN_COALESCING_PREF_STRING, DEFAULT_INPUT_COALESCING));
+        config.mouseCoalescing = Integer.parseInt(prefs.getString(MOUSE_COALESCING_PREF_STRING, DEFAULT_INPUT_COALESCING));
+        config.trackpadCoalescing = Integer.parseInt(prefs.getString(TRACKPAD_COALESCING_PREF_STRING, DEFAULT_TRACKPAD_COALESCING));
         
         // 对于没有触摸屏的设备，默认启用本地鼠标指针
         boolean hasTouchscreen = context.getPackageManager().hasSystemFeature(PackageManager.FEATURE_TOUCHSCREEN);
@@ -858,6 +908,12 @@ public class PreferenceConfiguration {
         }
         config.enableAudioFx = prefs.getBoolean(ENABLE_AUDIO_FX_PREF_STRING, DEFAULT_ENABLE_AUDIO_FX);
         config.enableSpatializer = prefs.getBoolean(ENABLE_SPATIALIZER_PREF_STRING, DEFAULT_ENABLE_SPATIALIZER);
+        config.audioOutputThread = prefs.getBoolean(AUDIO_OUTPUT_THREAD_PREF_STRING, DEFAULT_AUDIO_OUTPUT_THREAD);
+        config.audioFloatOutput = prefs.getBoolean(AUDIO_FLOAT_OUTPUT_PREF_STRING, DEFAULT_AUDIO_FLOAT_OUTPUT);
+        config.audioConversion = prefs.getBoolean(AUDIO_CONVERSION_PREF_STRING, DEFAULT_AUDIO_CONVERSION);
+        config.avSync = prefs.getBoolean(AV_SYNC_PREF_STRING, DEFAULT_AV_SYNC);
+        config.avSyncWindowMs = prefs.getInt(AV_SYNC_WINDOW_PREF_STRING, DEFAULT_AV_SYNC_WINDOW_MS);
+        config.avSyncDisplayLatencyMs = prefs.getInt(AV_SYNC_DISPLAY_LATENCY_PREF_STRING, DEFAULT_AV_SYNC_DISPLAY_LATENCY_MS);
         config.reduceRefreshRate = prefs.getBoolean(REDUCE_REFRESH_RATE_PREF_STRING, DEFAULT_REDUCE_REFRESH_RATE);
         config.fullRange = prefs.getBoolean(FULL_RANGE_PREF_STRING, DEFAULT_FULL_RANGE);
         config.gamepadTouchpadAsMouse = prefs.getBoolean(GAMEPAD_TOUCHPAD_AS_MOUSE_PREF_STRING, DEFAULT_GAMEPAD_TOUCHPAD_AS_MOUSE);
@@ -882,6 +938,9 @@ public class PreferenceConfiguration {
         config.enableMic = prefs.getBoolean(ENABLE_MIC_PREF_STRING, DEFAULT_ENABLE_MIC);
         config.micBitrate = prefs.getInt(MIC_BITRATE_PREF_STRING, DEFAULT_MIC_BITRATE);
         config.micIconColor = prefs.getString(MIC_ICON_COLOR_PREF_STRING, DEFAULT_MIC_ICON_COLOR);
+        config.micFrameSizeMs = Integer.parseInt(prefs.getString(MIC_FRAME_SIZE_PREF_STRING, DEFAULT_MIC_FRAME_SIZE));
+        config.micFec = prefs.getBoolean(MIC_FEC_PREF_STRING, DEFAULT_MIC_FEC);
+        config.micDtx = prefs.getBoolean(MIC_DTX_PREF_STRING, DEFAULT_MIC_DTX);
         
         // 读取ESC菜单设置
         config.enableEscMenu = prefs.getBoolean(ENABLE_ESC_MENU_PREF_STRING, DEFAULT_ENABLE_ESC_MENU);
@@ -1029,6 +1088,9 @@ public class PreferenceConfiguration {
                     .putBoolean(ENABLE_MIC_PREF_STRING, enableMic)
                     .putInt(MIC_BITRATE_PREF_STRING, micBitrate)
                     .putString(MIC_ICON_COLOR_PREF_STRING, micIconColor)
+                    .putString(MIC_FRAME_SIZE_PREF_STRING, String.valueOf(micFrameSizeMs))
+                    .putBoolean(MIC_FEC_PREF_STRING, micFec)
+                    .putBoolean(MIC_DTX_PREF_STRING, micDtx)
                     .putBoolean(ENABLE_ESC_MENU_PREF_STRING, enableEscMenu)
                     .putString(ESC_MENU_KEY_PREF_STRING, String.valueOf(escMenuKey))
                     .putBoolean(CONTROL_ONLY_PREF_STRING, controlOnly)
@@ -1058,6 +1120,7 @@ public class PreferenceConfiguration {
         copy.height = this.height;
         copy.fps = this.fps;
         copy.bitrate = this.bitrate;
+        copy.adaptiveBitrate = this.adaptiveBitrate;
         copy.videoFormat = this.videoFormat;
         copy.enableHdr = this.enableHdr;
         copy.enablePerfOverlay = this.enablePerfOverlay;
@@ -1075,6 +1138,9 @@ public class PreferenceConfiguration {
         copy.outputBufferQueueLimit = this.outputBufferQueueLimit;
         copy.micBitrate = this.micBitrate;
         copy.micIconColor = this.micIconColor;
+        copy.micFrameSizeMs = this.micFrameSizeMs;
+        copy.micFec = this.micFec;
+        copy.micDtx = this.micDtx;
         copy.enableEscMenu = this.enableEscMenu;
         copy.escMenuKey = this.escMenuKey;
         copy.enableNativeMousePointer = this.enableNativeMousePointer;
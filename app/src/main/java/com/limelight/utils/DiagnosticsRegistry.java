@@ -0,0 +1,136 @@
+package com.limelight.utils;
+
+import com.limelight.LimeLog;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 诊断计数器注册表
+ * 麦克风、音频播放和视频等路径在这里注册各自的计数器，热路径上只做计数。
+ * 所有的汇总、分析和日志输出都由后台线程定期拍快照后完成，
+ * 音频线程上不会出现日志或字符串格式化。
+ *
+ * 快照也可以随时导出为JSON，附在问题报告里。
+ */
+public final class DiagnosticsRegistry {
+    private static final long SNAPSHOT_INTERVAL_MS = 5000; // 每5秒拍一次快照
+
+    /**
+     * 在后台线程上接收定期快照
+     */
+    public interface Reporter {
+        void onSnapshot(Snapshot snapshot);
+    }
+
+    /**
+     * 某一时刻所有计数器的值
+     */
+    public static final class Snapshot {
+        public final long timestampMs;
+        private final Map<String, Long> values;
+
+        private Snapshot(long timestampMs, Map<String, Long> values) {
+            this.timestampMs = timestampMs;
+            this.values = values;
+        }
+
+        public long get(String name) {
+            Long value = values.get(name);
+            return value != null ? value : 0;
+        }
+
+        public String toJson() {
+            try {
+                JSONObject counters = new JSONObject();
+                for (Map.Entry<String, Long> entry : values.entrySet()) {
+                    counters.put(entry.getKey(), entry.getValue().longValue());
+                }
+
+                JSONObject json = new JSONObject();
+                json.put("timestamp", timestampMs);
+                json.put("counters", counters);
+                return json.toString();
+            } catch (JSONException e) {
+                return "{}";
+            }
+        }
+
+        @Override
+        public String toString() {
+            return toJson();
+        }
+    }
+
+    // 按注册顺序保存，导出的JSON也按这个顺序
+    private static final Map<String, StripedCounter> counters = new LinkedHashMap<>();
+    private static final List<Reporter> reporters = new CopyOnWriteArrayList<>();
+    private static ScheduledThreadPoolExecutor snapshotExecutor;
+
+    /**
+     * 获取（不存在时创建）指定名称的计数器。
+     * 应在初始化时调用并保存返回值，不要在热路径上查找
+     */
+    public static synchronized StripedCounter counter(String name) {
+        StripedCounter counter = counters.get(name);
+        if (counter == null) {
+            counter = new StripedCounter(name);
+            counters.put(name, counter);
+        }
+        return counter;
+    }
+
+    /**
+     * 注册定期快照的接收者，第一次注册时启动后台线程
+     */
+    public static synchronized void addReporter(Reporter reporter) {
+        reporters.add(reporter);
+
+        if (snapshotExecutor == null) {
+            snapshotExecutor = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread t = new Thread(r, "Diagnostics");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            });
+            snapshotExecutor.scheduleWithFixedDelay(DiagnosticsRegistry::deliverSnapshot,
+                    SNAPSHOT_INTERVAL_MS, SNAPSHOT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void deliverSnapshot() {
+        Snapshot snapshot = snapshot();
+        for (Reporter reporter : reporters) {
+            try {
+                reporter.onSnapshot(snapshot);
+            } catch (Exception e) {
+                // 不能让一个报告者的异常终止定时任务
+                LimeLog.warning("诊断报告失败: " + e.getMessage());
+            }
+        }
+    }
+
+    public static Snapshot snapshot() {
+        List<StripedCounter> current;
+        synchronized (DiagnosticsRegistry.class) {
+            current = new ArrayList<>(counters.values());
+        }
+
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (StripedCounter counter : current) {
+            values.put(counter.getName(), counter.sum());
+        }
+        return new Snapshot(System.currentTimeMillis(), values);
+    }
+
+    private DiagnosticsRegistry() {
+    }
+}
@@ -0,0 +1,57 @@
+package com.limelight.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 分段计数器
+ * 每个线程按线程ID落在各自的分段上累加，分段之间隔开一个缓存行，
+ * 不同线程的计数互不争用。读取时把所有分段加起来。
+ * 计数路径上没有锁、没有分配，可以在音频/视频线程上放心使用。
+ *
+ * 通过 {@link DiagnosticsRegistry#counter(String)} 获取实例。
+ */
+public final class StripedCounter {
+    // 分段数，必须是2的幂
+    private static final int STRIPES = 8;
+
+    // 每个分段占一个64字节的缓存行
+    private static final int LONGS_PER_CACHE_LINE = 8;
+
+    private final String name;
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * LONGS_PER_CACHE_LINE);
+
+    StripedCounter(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long delta) {
+        // 同一分段上通常只有一个线程，所以这里的CAS几乎不会失败
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        cells.getAndAdd(stripe * LONGS_PER_CACHE_LINE, delta);
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * LONGS_PER_CACHE_LINE);
+        }
+        return sum;
+    }
+
+    /**
+     * 清零。与并发的累加之间没有原子性保证，只适合在会话开始时调用
+     */
+    public void reset() {
+        for (int i = 0; i < STRIPES; i++) {
+            cells.set(i * LONGS_PER_CACHE_LINE, 0);
+        }
+    }
+}
@@ -6,11 +6,15 @@
 typedef struct {
     OpusEncoder* encoder;
     int frameSize;
+    int channels;
+    // 每帧PCM的暂存区，避免每次编码都去申请Java数组元素
+    opus_int16* pcm;
 } OpusContext;
 
 JNIEXPORT jlong JNICALL
 Java_com_limelight_binding_audio_OpusEncoder_nativeInit(JNIEnv* env, jclass clazz,
-                                                      jint sampleRate, jint channels, jint bitrate) {
+                                                      jint sampleRate, jint channels, jint bitrate,
+                                                      jint frameSizeMs, jboolean fec, jboolean dtx) {
     int error;
     OpusContext* ctx = (OpusContext*)malloc(sizeof(OpusContext));
     if (!ctx) {
@@ -18,11 +22,35 @@ Java_com_limelight_binding_audio_OpusEncoder_nativeInit(JNIEnv* env, jclass claz
     }
     
     // 计算每帧采样数 (20ms @ 48kHz = 960 samples)
-    ctx->frameSize = sampleRate / 50; // 20ms帧
+    int frameDuration;
+    switch (frameSizeMs) {
+        case 5:
+            frameDuration = OPUS_FRAMESIZE_5_MS;
+            break;
+        case 10:
+            frameDuration = OPUS_FRAMESIZE_10_MS;
+            break;
+        default:
+            frameSizeMs = 20;
+            frameDuration = OPUS_FRAMESIZE_20_MS;
+            break;
+    }
+    ctx->frameSize = sampleRate * frameSizeMs / 1000;
+    ctx->channels = channels;
+    
+    ctx->pcm = (opus_int16*)malloc(ctx->frameSize * channels * sizeof(opus_int16));
+    if (!ctx->pcm) {
+        free(ctx);
+        return 0;
+    }
     
     // 创建Opus编码器
-    ctx->encoder = opus_encoder_create(sampleRate, channels, OPUS_APPLICATION_VOIP, &error);
+    // 10ms以下的帧只能使用CELT，RESTRICTED_LOWDELAY可以省掉SILK的额外前瞻延迟
+    ctx->encoder = opus_encoder_create(sampleRate, channels,
+                                       frameSizeMs < 10 ? OPUS_APPLICATION_RESTRICTED_LOWDELAY : OPUS_APPLICATION_VOIP,
+                                       &error);
     if (error != OPUS_OK) {
+        free(ctx->pcm);
         free(ctx);
         return 0;
     }
@@ -34,72 +62,55 @@ Java_com_limelight_binding_audio_OpusEncoder_nativeInit(JNIEnv* env, jclass claz
     opus_encoder_ctl(ctx->encoder, OPUS_SET_SIGNAL(OPUS_SIGNAL_VOICE));
     opus_encoder_ctl(ctx->encoder, OPUS_SET_COMPLEXITY(6)); // 降低复杂度以减少延迟 (从8降到6)
     
-    // 启用DTX（不发送静音帧）
-    opus_encoder_ctl(ctx->encoder, OPUS_SET_DTX(1));
+    // DTX（静音时不发送完整帧）
+    opus_encoder_ctl(ctx->encoder, OPUS_SET_DTX(dtx ? 1 : 0));
     
     // 设置帧大小
-    opus_encoder_ctl(ctx->encoder, OPUS_SET_EXPERT_FRAME_DURATION(OPUS_FRAMESIZE_20_MS));
-    
-    // 启用前向纠错
-    opus_encoder_ctl(ctx->encoder, OPUS_SET_INBAND_FEC(1));
+    opus_encoder_ctl(ctx->encoder, OPUS_SET_EXPERT_FRAME_DURATION(frameDuration));
     
-    // 设置包丢失率预测
-    opus_encoder_ctl(ctx->encoder, OPUS_SET_PACKET_LOSS_PERC(1));
+    // 前向纠错，只有设置了包丢失率预测才会真正生成冗余数据
+    opus_encoder_ctl(ctx->encoder, OPUS_SET_INBAND_FEC(fec ? 1 : 0));
+    opus_encoder_ctl(ctx->encoder, OPUS_SET_PACKET_LOSS_PERC(fec ? 1 : 0));
     
     return (jlong)ctx;
 }
 
-JNIEXPORT jbyteArray
+// 将一帧PCM直接编码到调用者提供的direct ByteBuffer中，返回编码后的字节数，失败返回负值。
+// 整个过程不创建任何Java对象。
+JNIEXPORT jint JNICALL
 Java_com_limelight_binding_audio_OpusEncoder_nativeEncode(JNIEnv* env, jclass clazz,
                                                         jlong handle, jbyteArray pcmData,
-                                                        jint offset, jint length) {
+                                                        jint offset, jint length,
+                                                        jobject outBuffer) {
     if (handle == 0) {
-        return NULL;
+        return -1;
     }
     
     OpusContext* ctx = (OpusContext*)handle;
     if (ctx->encoder == NULL) {
-        return NULL;
+        return -1;
     }
     
-    jbyte* pcm;
-    jbyteArray result = NULL;
-    
-    // 最大Opus帧大小
-    unsigned char encoded[4000];
-    int encodedLength;
-    
-    // 获取PCM数据
-    pcm = (*env)->GetByteArrayElements(env, pcmData, NULL);
-    if (!pcm) {
-        return NULL;
+    // 必须是一个完整的帧 (16位样本，2字节)
+    int frameBytes = ctx->frameSize * ctx->channels * (int)sizeof(opus_int16);
+    if (length < frameBytes) {
+        return -1;
     }
     
-    // 确保数据长度是正确的（必须是一个完整的帧）
-    int samples = length / 2; // 16位样本 (2字节)
-    
-    // 检查帧大小是否匹配
-    if (samples != ctx->frameSize) {
-        // 如果帧大小不匹配，记录警告但继续处理
-        // 这可能是由于音频捕获的微小变化
+    unsigned char* out = (unsigned char*)(*env)->GetDirectBufferAddress(env, outBuffer);
+    jlong outCapacity = (*env)->GetDirectBufferCapacity(env, outBuffer);
+    if (out == NULL || outCapacity <= 0) {
+        return -1;
     }
     
-    // 编码音频数据
-    encodedLength = opus_encode(ctx->encoder, (const opus_int16*)(pcm + offset), 
-                              ctx->frameSize, encoded, sizeof(encoded));
-    
-    // 释放PCM数据
-    (*env)->ReleaseByteArrayElements(env, pcmData, pcm, JNI_ABORT);
-    
-    if (encodedLength > 0) {
-        // 创建结果数组
-        result = (*env)->NewByteArray(env, encodedLength);
-        if (result) {
-            (*env)->SetByteArrayRegion(env, result, 0, encodedLength, (jbyte*)encoded);
-        }
+    // 复制到预先分配的暂存区，不需要固定Java数组
+    (*env)->GetByteArrayRegion(env, pcmData, offset, frameBytes, (jbyte*)ctx->pcm);
+    if ((*env)->ExceptionCheck(env)) {
+        return -1;
     }
     
-    return result;
+    // 编码音频数据
+    return opus_encode(ctx->encoder, ctx->pcm, ctx->frameSize, out, (opus_int32)outCapacity);
 }
 
 JNIEXPORT void JNICALL
@@ -109,6 +120,7 @@ Java_com_limelight_binding_audio_OpusEncoder_nativeDestroy(JNIEnv* env, jclass c
         if (ctx->encoder) {
             opus_encoder_destroy(ctx->encoder);
         }
+        free(ctx->pcm);
         free(ctx);
     }
 }
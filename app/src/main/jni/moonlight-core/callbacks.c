@@ -2,6 +2,7 @@
 
 #include <pthread.h>
 #include <string.h>
+#include <stdlib.h>
 
 #include <Limelight.h>
 
@@ -22,11 +23,16 @@ static jmethodID BridgeDrStartMethod;
 static jmethodID BridgeDrStopMethod;
 static jmethodID BridgeDrCleanupMethod;
 static jmethodID BridgeDrSubmitDecodeUnitMethod;
+static jmethodID BridgeDrUsesDirectBuffersMethod;
+static jmethodID BridgeDrBeginDirectDecodeUnitMethod;
+static jmethodID BridgeDrCommitDirectDecodeUnitMethod;
+static jmethodID BufferPositionMethod;
 static jmethodID BridgeArInitMethod;
 static jmethodID BridgeArStartMethod;
 static jmethodID BridgeArStopMethod;
 static jmethodID BridgeArCleanupMethod;
 static jmethodID BridgeArPlaySampleMethod;
+static jmethodID BridgeArPlayDirectSampleMethod;
 static jmethodID BridgeClStageStartingMethod;
 static jmethodID BridgeClStageCompleteMethod;
 static jmethodID BridgeClStageFailedMethod;
@@ -40,7 +46,10 @@ static jmethodID BridgeClSetMotionEventStateMethod;
 static jmethodID BridgeClSetControllerLEDMethod;
 static jmethodID BridgeClResolutionChangedMethod;
 static jbyteArray DecodedFrameBuffer;
+static bool DirectDecodeUnitBuffers;
 static jshortArray DecodedAudioBuffer;
+static jobject DecodedAudioDirectBuffer;
+static opus_int16* DecodedAudioDirectData;
 
 void DetachThread(void* context) {
     (*JVM)->DetachCurrentThread(JVM);
@@ -87,11 +96,16 @@ Java_com_limelight_nvstream_jni_MoonBridge_init(JNIEnv *env, jclass clazz) {
     BridgeDrStopMethod = (*env)->GetStaticMethodID(env, clazz, "bridgeDrStop", "()V");
     BridgeDrCleanupMethod = (*env)->GetStaticMethodID(env, clazz, "bridgeDrCleanup", "()V");
     BridgeDrSubmitDecodeUnitMethod = (*env)->GetStaticMethodID(env, clazz, "bridgeDrSubmitDecodeUnit", "([BIIIICJJ)I");
+    BridgeDrUsesDirectBuffersMethod = (*env)->GetStaticMethodID(env, clazz, "bridgeDrUsesDirectBuffers", "()Z");
+    BridgeDrBeginDirectDecodeUnitMethod = (*env)->GetStaticMethodID(env, clazz, "bridgeDrBeginDirectDecodeUnit", "(IIICJJ)Ljava/nio/ByteBuffer;");
+    BridgeDrCommitDirectDecodeUnitMethod = (*env)->GetStaticMethodID(env, clazz, "bridgeDrCommitDirectDecodeUnit", "(I)I");
+    BufferPositionMethod = (*env)->GetMethodID(env, (*env)->FindClass(env, "java/nio/Buffer"), "position", "()I");
     BridgeArInitMethod = (*env)->GetStaticMethodID(env, clazz, "bridgeArInit", "(III)I");
     BridgeArStartMethod = (*env)->GetStaticMethodID(env, clazz, "bridgeArStart", "()V");
     BridgeArStopMethod = (*env)->GetStaticMethodID(env, clazz, "bridgeArStop", "()V");
     BridgeArCleanupMethod = (*env)->GetStaticMethodID(env, clazz, "bridgeArCleanup", "()V");
     BridgeArPlaySampleMethod = (*env)->GetStaticMethodID(env, clazz, "bridgeArPlaySample", "([S)V");
+    BridgeArPlayDirectSampleMethod = (*env)->GetStaticMethodID(env, clazz, "bridgeArPlayDirectSample", "(Ljava/nio/ByteBuffer;I)V");
     BridgeClStageStartingMethod = (*env)->GetStaticMethodID(env, clazz, "bridgeClStageStarting", "(I)V");
     BridgeClStageCompleteMethod = (*env)->GetStaticMethodID(env, clazz, "bridgeClStageComplete", "(I)V");
     BridgeClStageFailedMethod = (*env)->GetStaticMethodID(env, clazz, "bridgeClStageFailed", "(II)V");
@@ -122,6 +136,12 @@ int BridgeDrSetup(int videoFormat, int width, int height, int redrawRate, void*
     // Use a 32K frame buffer that will increase if needed
     DecodedFrameBuffer = (*env)->NewGlobalRef(env, (*env)->NewByteArray(env, 32768));
 
+    // Check if the renderer will let us write picture data straight into its input buffers
+    DirectDecodeUnitBuffers = (*env)->CallStaticBooleanMethod(env, GlobalBridgeClass, BridgeDrUsesDirectBuffersMethod);
+    if ((*env)->ExceptionCheck(env)) {
+        return -1;
+    }
+
     return 0;
 }
 
@@ -145,14 +165,86 @@ void BridgeDrCleanup(void) {
     (*env)->CallStaticVoidMethod(env, GlobalBridgeClass, BridgeDrCleanupMethod);
 }
 
+static void EnsureDecodedFrameBufferSize(JNIEnv* env, int length) {
+    // Increase the size of our frame data buffer if our data won't fit
+    if ((*env)->GetArrayLength(env, DecodedFrameBuffer) < length) {
+        (*env)->DeleteGlobalRef(env, DecodedFrameBuffer);
+        DecodedFrameBuffer = (*env)->NewGlobalRef(env, (*env)->NewByteArray(env, length));
+    }
+}
+
+// Copies the picture data straight into the direct ByteBuffer provided by the renderer,
+// avoiding the intermediate Java array and the second copy on the Java side.
+static int SubmitDirectPicData(JNIEnv* env, PDECODE_UNIT decodeUnit, int picDataLength) {
+    PLENTRY currentEntry;
+    jobject directBuffer;
+    char* dest;
+    int ret;
+
+    directBuffer = (*env)->CallStaticObjectMethod(env, GlobalBridgeClass, BridgeDrBeginDirectDecodeUnitMethod,
+                                                  picDataLength, decodeUnit->frameNumber, decodeUnit->frameType,
+                                                  (jchar)decodeUnit->frameHostProcessingLatency,
+                                                  (jlong)decodeUnit->receiveTimeUs, (jlong)decodeUnit->enqueueTimeUs);
+    if ((*env)->ExceptionCheck(env)) {
+        // We will crash here
+        (*JVM)->DetachCurrentThread(JVM);
+        return DR_OK;
+    }
+    else if (directBuffer == NULL) {
+        // The renderer didn't accept this frame. Committing it with no data returns the
+        // status the array path would have returned for it.
+        ret = (*env)->CallStaticIntMethod(env, GlobalBridgeClass, BridgeDrCommitDirectDecodeUnitMethod, -1);
+        if ((*env)->ExceptionCheck(env)) {
+            // We will crash here
+            (*JVM)->DetachCurrentThread(JVM);
+            return DR_OK;
+        }
+        return ret;
+    }
+
+    dest = (*env)->GetDirectBufferAddress(env, directBuffer);
+    if (dest == NULL) {
+        // Not a direct buffer, so fall back to the array path from now on
+        DirectDecodeUnitBuffers = false;
+        (*env)->DeleteLocalRef(env, directBuffer);
+        (*env)->CallStaticIntMethod(env, GlobalBridgeClass, BridgeDrCommitDirectDecodeUnitMethod, -1);
+        return DR_NEED_IDR;
+    }
+
+    // The renderer may have already placed CSD at the start of the buffer
+    dest += (*env)->CallIntMethod(env, directBuffer, BufferPositionMethod);
+
+    // This thread never returns to Java, so we must free our local references ourselves
+    (*env)->DeleteLocalRef(env, directBuffer);
+
+    currentEntry = decodeUnit->bufferList;
+    while (currentEntry != NULL) {
+        if (currentEntry->bufferType == BUFFER_TYPE_PICDATA) {
+            memcpy(dest, currentEntry->data, currentEntry->length);
+            dest += currentEntry->length;
+        }
+
+        currentEntry = currentEntry->next;
+    }
+
+    ret = (*env)->CallStaticIntMethod(env, GlobalBridgeClass, BridgeDrCommitDirectDecodeUnitMethod, picDataLength);
+    if ((*env)->ExceptionCheck(env)) {
+        // We will crash here
+        (*JVM)->DetachCurrentThread(JVM);
+        return DR_OK;
+    }
+    else {
+        return ret;
+    }
+}
+
 int BridgeDrSubmitDecodeUnit(PDECODE_UNIT decodeUnit) {
     JNIEnv* env = GetThreadEnv();
     int ret;
 
-    // Increase the size of our frame data buffer if our frame won't fit
-    if ((*env)->GetArrayLength(env, DecodedFrameBuffer) < decodeUnit->fullLength) {
-        (*env)->DeleteGlobalRef(env, DecodedFrameBuffer);
-        DecodedFrameBuffer = (*env)->NewGlobalRef(env, (*env)->NewByteArray(env, decodeUnit->fullLength));
+    // In direct mode, only parameter set NALUs pass through our array
+    if (!DirectDecodeUnitBuffers) {
+        EnsureDecodedFrameBufferSize(env, decodeUnit->fullLength);
     }
 
     PLENTRY currentEntry;
@@ -163,6 +255,10 @@ int BridgeDrSubmitDecodeUnit(PDECODE_UNIT decodeUnit) {
     while (currentEntry != NULL) {
         // Submit parameter set NALUs separately from picture data
         if (currentEntry->bufferType != BUFFER_TYPE_PICDATA) {
+            if (DirectDecodeUnitBuffers) {
+                EnsureDecodedFrameBufferSize(env, currentEntry->length);
+            }
+
             // Use the beginning of the buffer each time since this is a separate
             // invocation of the decoder each time.
             (*env)->SetByteArrayRegion(env, DecodedFrameBuffer, 0, currentEntry->length, (jbyte*)currentEntry->data);
@@ -181,13 +277,19 @@ int BridgeDrSubmitDecodeUnit(PDECODE_UNIT decodeUnit) {
             }
         }
         else {
-            (*env)->SetByteArrayRegion(env, DecodedFrameBuffer, offset, currentEntry->length, (jbyte*)currentEntry->data);
+            if (!DirectDecodeUnitBuffers) {
+                (*env)->SetByteArrayRegion(env, DecodedFrameBuffer, offset, currentEntry->length, (jbyte*)currentEntry->data);
+            }
             offset += currentEntry->length;
         }
 
         currentEntry = currentEntry->next;
     }
 
+    if (DirectDecodeUnitBuffers) {
+        return SubmitDirectPicData(env, decodeUnit, offset);
+    }
+
     ret = (*env)->CallStaticIntMethod(env, GlobalBridgeClass, BridgeDrSubmitDecodeUnitMethod,
                                        DecodedFrameBuffer, offset, BUFFER_TYPE_PICDATA,
                                        decodeUnit->frameNumber, decodeUnit->frameType, (jchar)decodeUnit->frameHostProcessingLatency,
@@ -224,8 +326,27 @@ int BridgeArInit(int audioConfiguration, POPUS_MULTISTREAM_CONFIGURATION opusCon
             return -1;
         }
 
-        // We know ahead of time what the buffer size will be for decoded audio, so pre-allocate it
-        DecodedAudioBuffer = (*env)->NewGlobalRef(env, (*env)->NewShortArray(env, opusConfig->channelCount * opusConfig->samplesPerFrame));
+        // We know ahead of time what the buffer size will be for decoded audio, so pre-allocate it.
+        // We decode straight into native memory wrapped by a direct ByteBuffer, which the renderer
+        // can hand to AudioTrack without pinning a Java array or copying the samples again.
+        size_t decodedAudioSize = opusConfig->channelCount * opusConfig->samplesPerFrame * sizeof(opus_int16);
+        DecodedAudioDirectData = malloc(decodedAudioSize);
+        if (DecodedAudioDirectData != NULL) {
+            jobject directBuffer = (*env)->NewDirectByteBuffer(env, DecodedAudioDirectData, decodedAudioSize);
+            if (directBuffer != NULL) {
+                DecodedAudioDirectBuffer = (*env)->NewGlobalRef(env, directBuffer);
+                (*env)->DeleteLocalRef(env, directBuffer);
+            }
+            else {
+                // Direct buffers aren't supported, so fall back to a Java array
+                (*env)->ExceptionClear(env);
+                free(DecodedAudioDirectData);
+                DecodedAudioDirectData = NULL;
+            }
+        }
+        if (DecodedAudioDirectBuffer == NULL) {
+            DecodedAudioBuffer = (*env)->NewGlobalRef(env, (*env)->NewShortArray(env, opusConfig->channelCount * opusConfig->samplesPerFrame));
+        }
     }
 
     return err;
@@ -248,7 +369,16 @@ void BridgeArCleanup() {
 
     opus_multistream_decoder_destroy(Decoder);
 
-    (*env)->DeleteGlobalRef(env, DecodedAudioBuffer);
+    if (DecodedAudioDirectBuffer != NULL) {
+        (*env)->DeleteGlobalRef(env, DecodedAudioDirectBuffer);
+        DecodedAudioDirectBuffer = NULL;
+        free(DecodedAudioDirectData);
+        DecodedAudioDirectData = NULL;
+    }
+    if (DecodedAudioBuffer != NULL) {
+        (*env)->DeleteGlobalRef(env, DecodedAudioBuffer);
+        DecodedAudioBuffer = NULL;
+    }
 
     (*env)->CallStaticVoidMethod(env, GlobalBridgeClass, BridgeArCleanupMethod);
 }
@@ -256,6 +386,25 @@ void BridgeArCleanup() {
 void BridgeArDecodeAndPlaySample(char* sampleData, int sampleLength) {
     JNIEnv* env = GetThreadEnv();
 
+    if (DecodedAudioDirectBuffer != NULL) {
+        int decodeLen = opus_multistream_decode(Decoder,
+                                                (const unsigned char*)sampleData,
+                                                sampleLength,
+                                                DecodedAudioDirectData,
+                                                OpusConfig.samplesPerFrame,
+                                                0);
+        if (decodeLen > 0) {
+            // The renderer consumes the samples before returning, so the buffer can be reused
+            (*env)->CallStaticVoidMethod(env, GlobalBridgeClass, BridgeArPlayDirectSampleMethod,
+                                         DecodedAudioDirectBuffer, decodeLen * OpusConfig.channelCount);
+            if ((*env)->ExceptionCheck(env)) {
+                // We will crash here
+                (*JVM)->DetachCurrentThread(JVM);
+            }
+        }
+        return;
+    }
+
     jshort* decodedData = (*env)->GetPrimitiveArrayCritical(env, DecodedAudioBuffer, NULL);
 
     int decodeLen = opus_multistream_decode(Decoder,
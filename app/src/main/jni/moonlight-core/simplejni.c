@@ -57,6 +57,52 @@ Java_com_limelight_nvstream_jni_MoonBridge_sendTouchEvent(JNIEnv *env, jclass cl
                             contactAreaMajor, contactAreaMinor, rotation);
 }
 
+// Must match TouchFrame.MAX_POINTERS
+#define MAX_TOUCH_FRAME_POINTERS 32
+
+JNIEXPORT jint JNICALL
+Java_com_limelight_nvstream_jni_MoonBridge_sendTouchFrame(JNIEnv *env, jclass clazz,
+                                                          jbyte eventType, jint count,
+                                                          jintArray pointerIds,
+                                                          jfloatArray x, jfloatArray y,
+                                                          jfloatArray pressureOrDistance,
+                                                          jfloatArray contactAreaMajor,
+                                                          jfloatArray contactAreaMinor,
+                                                          jshortArray rotation) {
+    jint ids[MAX_TOUCH_FRAME_POINTERS];
+    jfloat xs[MAX_TOUCH_FRAME_POINTERS], ys[MAX_TOUCH_FRAME_POINTERS];
+    jfloat pressures[MAX_TOUCH_FRAME_POINTERS];
+    jfloat majors[MAX_TOUCH_FRAME_POINTERS], minors[MAX_TOUCH_FRAME_POINTERS];
+    jshort rotations[MAX_TOUCH_FRAME_POINTERS];
+    int i, err;
+
+    if (count <= 0) {
+        return 0;
+    }
+    else if (count > MAX_TOUCH_FRAME_POINTERS) {
+        count = MAX_TOUCH_FRAME_POINTERS;
+    }
+
+    // Copy everything out up front rather than holding the arrays pinned while we send
+    (*env)->GetIntArrayRegion(env, pointerIds, 0, count, ids);
+    (*env)->GetFloatArrayRegion(env, x, 0, count, xs);
+    (*env)->GetFloatArrayRegion(env, y, 0, count, ys);
+    (*env)->GetFloatArrayRegion(env, pressureOrDistance, 0, count, pressures);
+    (*env)->GetFloatArrayRegion(env, contactAreaMajor, 0, count, majors);
+    (*env)->GetFloatArrayRegion(env, contactAreaMinor, 0, count, minors);
+    (*env)->GetShortArrayRegion(env, rotation, 0, count, rotations);
+
+    for (i = 0; i < count; i++) {
+        err = LiSendTouchEvent(eventType, ids[i], xs[i], ys[i], pressures[i],
+                               majors[i], minors[i], rotations[i]);
+        if (err != 0) {
+            return err;
+        }
+    }
+
+    return 0;
+}
+
 JNIEXPORT jint JNICALL
 Java_com_limelight_nvstream_jni_MoonBridge_sendPenEvent(JNIEnv *env, jclass clazz, jbyte eventType,
                                                         jbyte toolType, jbyte penButtons,
@@ -282,26 +328,18 @@ Java_com_limelight_nvstream_jni_MoonBridge_isMicrophoneRequested(JNIEnv *env, jc
 }
 
 JNIEXPORT jint JNICALL
-Java_com_limelight_nvstream_jni_MoonBridge_sendMicrophoneOpusData(JNIEnv *env, jclass clazz, jbyteArray opusData) {
-    if (opusData == NULL) {
+Java_com_limelight_nvstream_jni_MoonBridge_sendMicrophoneOpusData(JNIEnv *env, jclass clazz, jobject opusData, jint length) {
+    if (opusData == NULL || length <= 0) {
         return -1;
     }
     
-    jsize length = (*env)->GetArrayLength(env, opusData);
-    if (length <= 0) {
+    // The packet is a pooled direct buffer, so we can send straight from it without copying
+    unsigned char* data = (*env)->GetDirectBufferAddress(env, opusData);
+    if (data == NULL || length > (*env)->GetDirectBufferCapacity(env, opusData)) {
         return -1;
     }
     
-    jbyte* data = (*env)->GetByteArrayElements(env, opusData, NULL);
-    if (data == NULL) {
-        return -1;
-    }
-    
-    int result = sendMicrophoneOpusData((const unsigned char*)data, (int)length);
-    
-    (*env)->ReleaseByteArrayElements(env, opusData, data, JNI_ABORT);
-    
-    return result;
+    return sendMicrophoneOpusData(data, (int)length);
 }
 
 JNIEXPORT jboolean JNICALL